@@ -0,0 +1,163 @@
+package study.querydsl.projection.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@code @GenerateProjection} 이 붙은 DTO 마다 XxxProjection 을 만든다.
+ * <p>
+ * static/final 이 아닌 필드를 속성으로 보고 setXxx 를 부르는 코드를 만든다. 생성자나 setter 가 lombok 으로
+ * 만들어지면 이 라운드에서는 보이지 않으므로 있는지 검사하지 않는다. 없으면 생성된 코드가 컴파일되지 않는다.
+ */
+@SupportedAnnotationTypes(ProjectionProcessor.GENERATE_PROJECTION)
+public class ProjectionProcessor extends AbstractProcessor {
+
+    static final String GENERATE_PROJECTION = "study.querydsl.projection.GenerateProjection";
+    private static final String BASE_CLASS = "study.querydsl.projection.GeneratedProjection";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(annotation))) {
+                generate(type);
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) {
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)
+                || !type.getTypeParameters().isEmpty() || type.getNestingKind().isNested()) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "@GenerateProjection 은 최상위 구체 클래스에만 붙일 수 있습니다.", type);
+            return;
+        }
+        List<VariableElement> properties = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (!modifiers.contains(Modifier.STATIC) && !modifiers.contains(Modifier.FINAL)) {
+                properties.add(field);
+            }
+        }
+        try {
+            write(type, properties);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "projection 생성 실패: " + e.getMessage(), type);
+        }
+    }
+
+    private void write(TypeElement type, List<VariableElement> properties) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String dtoName = type.getSimpleName().toString();
+        String className = dtoName + "Projection";
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(packageName + "." + className, type);
+        try (PrintWriter out = new PrintWriter(file.openWriter())) {
+            out.println("package " + packageName + ";");
+            out.println();
+            out.println("import com.querydsl.core.types.Expression;");
+            out.println();
+            out.println("import javax.annotation.processing.Generated;");
+            out.println("import java.util.List;");
+            out.println();
+            out.println("/**");
+            out.println(" * " + dtoName + " 프로젝션. 별칭(또는 경로 이름)이 속성 이름과 같아야 한다.");
+            out.println(" */");
+            out.println("@Generated(\"" + ProjectionProcessor.class.getName() + "\")");
+            out.println("public final class " + className + " extends " + BASE_CLASS + "<" + dtoName + "> {");
+            out.println();
+            out.println("    private static final long serialVersionUID = 1L;");
+            out.println();
+            out.print("    private static final List<String> PROPERTIES = List.of(");
+            for (int i = 0; i < properties.size(); i++) {
+                out.print((i > 0 ? ", " : "") + "\"" + properties.get(i).getSimpleName() + "\"");
+            }
+            out.println(");");
+            out.println();
+            out.println("    private " + className + "(Expression<?>... args) {");
+            out.println("        super(" + dtoName + ".class, PROPERTIES, args);");
+            out.println("    }");
+            out.println();
+            out.println("    public static " + className + " of(Expression<?>... args) {");
+            out.println("        return new " + className + "(args);");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    @SuppressWarnings(\"unchecked\")");
+            out.println("    public " + dtoName + " newInstance(Object... values) {");
+            out.println("        " + dtoName + " dto = new " + dtoName + "();");
+            out.println("        for (int i = 0; i < values.length; i++) {");
+            out.println("            Object value = values[i];");
+            out.println("            if (value == null) {");
+            out.println("                continue;");
+            out.println("            }");
+            out.println("            switch (slots[i]) {");
+            for (int i = 0; i < properties.size(); i++) {
+                VariableElement property = properties.get(i);
+                out.println("                case " + i + ":");
+                out.println("                    dto." + setterName(property) + "(" + cast(property.asType()) + ");");
+                out.println("                    break;");
+            }
+            out.println("            }");
+            out.println("        }");
+            out.println("        return dto;");
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    //기본형은 집계 결과(Long 등)도 받도록 Number 로 바꾼다.
+    private String cast(TypeMirror type) {
+        switch (type.getKind()) {
+            case INT:
+                return "((Number) value).intValue()";
+            case LONG:
+                return "((Number) value).longValue()";
+            case DOUBLE:
+                return "((Number) value).doubleValue()";
+            case FLOAT:
+                return "((Number) value).floatValue()";
+            case SHORT:
+                return "((Number) value).shortValue()";
+            case BYTE:
+                return "((Number) value).byteValue()";
+            case BOOLEAN:
+                return "(Boolean) value";
+            case CHAR:
+                return "(Character) value";
+            default:
+                return "(" + processingEnv.getTypeUtils().erasure(type) + ") value";
+        }
+    }
+
+    //lombok 규칙과 같게. boolean 필드 isXxx 는 setXxx
+    private static String setterName(VariableElement field) {
+        String name = field.getSimpleName().toString();
+        if (field.asType().getKind() == TypeKind.BOOLEAN && name.startsWith("is") && name.length() > 2
+                && Character.isUpperCase(name.charAt(2))) {
+            name = name.substring(2);
+        }
+        return "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+}
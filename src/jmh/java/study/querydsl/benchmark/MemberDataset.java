@@ -0,0 +1,111 @@
+package study.querydsl.benchmark;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.init.MemberDataGenerator;
+import study.querydsl.init.MemberDataSpec;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+/**
+ * H2 메모리 DB 로 애플리케이션을 띄우고 MemberDataGenerator 로 회원 members 명을 넣어 둔다. fork 마다 한 번
+ * 팀은 회원 1000 명당 하나(최소 10 개), 나이는 0 ~ 99 를 고르게 쓰고 seed 가 고정이라 매번 같은 데이터다.
+ * DB 경로를 재려고 검색/count 캐시와 p6spy 는 끈다.
+ */
+@State(Scope.Benchmark)
+public class MemberDataset {
+
+    static final int AGES = 100;
+
+    //./gradlew jmh -PjmhMembers=10000,1000000,10000000
+    @Param({"10000"})
+    public int members;
+
+    ConfigurableApplicationContext context;
+    MemberRepository memberRepository;
+    MemberJpaRepository memberJpaRepository;
+    JPAQueryFactory queryFactory;
+    TransactionTemplate readOnlyTx;
+    int teams;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        //application.yml(MySQL, local 프로필 초기 데이터)보다 우선하도록 커맨드라인 인자로 덮어쓴다.
+        context = new SpringApplicationBuilder(QuerydslApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.profiles.active=benchmark",
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.properties.hibernate.format_sql=false",
+                        "--decorator.datasource.enabled=false",
+                        "--member.search-cache.enabled=false",
+                        "--member.count-cache.enabled=false",
+                        //검색/페이징만 재므로 이름 인덱스를 올리지 않는다.
+                        "--member.username-index.enabled=false",
+                        "--logging.level.root=warn",
+                        "--logging.level.org.hibernate.SQL=warn");
+        memberRepository = context.getBean(MemberRepository.class);
+        memberJpaRepository = context.getBean(MemberJpaRepository.class);
+        queryFactory = context.getBean(JPAQueryFactory.class);
+        readOnlyTx = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTx.setReadOnly(true);
+
+        teams = Math.max(10, members / 1000);
+        context.getBean(MemberDataGenerator.class).generate(MemberDataSpec.builder()
+                .teams(teams)
+                .members(members)
+                .ageMax(AGES - 1)
+                .build());
+        //H2 가 인덱스 선택도를 알도록 통계를 갱신한다.
+        context.getBean(JdbcTemplate.class).execute("analyze");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * none: 조건 없음, username: 이름 하나, team: 팀 하나, age: 나이 범위(10%), teamAge: 팀 + 나이 범위
+     */
+    MemberSearchCondition condition(String shape) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        switch (shape) {
+            case "none":
+                break;
+            case "username":
+                condition.setUsername("member" + members / 2);
+                break;
+            case "team":
+                condition.setTeamName("team" + teams / 2);
+                break;
+            case "age":
+                condition.setAgeGoe(20);
+                condition.setAgeLoe(29);
+                break;
+            case "teamAge":
+                condition.setTeamName("team" + teams / 2);
+                condition.setAgeGoe(20);
+                condition.setAgeLoe(29);
+                break;
+            default:
+                throw new IllegalArgumentException("알 수 없는 조건 모양: " + shape);
+        }
+        return condition;
+    }
+}
@@ -0,0 +1,68 @@
+package study.querydsl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 페이지 크기 20 으로 조건 모양과 페이지 깊이별 offset 페이징.
+ * offset 이 member.paging.deferred-join-offset 이상이면 deferred join 경로를 탄다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MemberPagingBenchmark {
+
+    static final int PAGE_SIZE = 20;
+
+    @Param({"none", "team", "age", "teamAge"})
+    public String shape;
+
+    //조건마다 결과 건수가 달라서 페이지 번호 대신 결과 안의 위치로 정한다.
+    @Param({"first", "middle", "last"})
+    public String depth;
+
+    private MemberSearchCondition condition;
+    private PageRequest pageable;
+
+    @Setup
+    public void setUp(MemberDataset dataset) {
+        condition = dataset.condition(shape);
+        long total = dataset.memberRepository.searchPageSimple(condition, PageRequest.of(0, PAGE_SIZE)).getTotalElements();
+        int lastPage = (int) Math.max(0, (total - 1) / PAGE_SIZE);
+        pageable = PageRequest.of(page(lastPage), PAGE_SIZE);
+    }
+
+    private int page(int lastPage) {
+        switch (depth) {
+            case "first":
+                return 0;
+            case "middle":
+                return lastPage / 2;
+            case "last":
+                return lastPage;
+            default:
+                throw new IllegalArgumentException("알 수 없는 페이지 깊이: " + depth);
+        }
+    }
+
+    @Benchmark
+    public Page<?> searchPageSimple(MemberDataset dataset) {
+        return dataset.memberRepository.searchPageSimple(condition, pageable);
+    }
+
+    @Benchmark
+    public Page<?> searchPageComplex(MemberDataset dataset) {
+        return dataset.memberRepository.searchPageComplex(condition, pageable);
+    }
+}
@@ -0,0 +1,44 @@
+package study.querydsl.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 페이징 없는 전체 검색. 결과가 작은 조건 모양만 잰다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MemberSearchBenchmark {
+
+    @Param({"username", "team", "teamAge"})
+    public String shape;
+
+    private MemberSearchCondition condition;
+
+    @Setup
+    public void setUp(MemberDataset dataset) {
+        condition = dataset.condition(shape);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> search(MemberDataset dataset) {
+        return dataset.memberRepository.search(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> searchByBuilder(MemberDataset dataset) {
+        return dataset.memberJpaRepository.searchByBuilder(condition);
+    }
+}
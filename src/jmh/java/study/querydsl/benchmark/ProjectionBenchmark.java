@@ -0,0 +1,75 @@
+package study.querydsl.benchmark;
+
+import com.querydsl.core.types.Projections;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.MemberDtoProjection;
+import study.querydsl.dto.QMemberDto;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 같은 rows 건을 DTO 로 읽는 방법별 비교. 쿼리는 같고 row → DTO 변환만 다르다.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProjectionBenchmark {
+
+    @Param({"1000"})
+    public int rows;
+
+    @Benchmark
+    public List<MemberDto> bean(MemberDataset dataset) {
+        return dataset.readOnlyTx.execute(status -> dataset.queryFactory
+                .select(Projections.bean(MemberDto.class, member.username, member.age))
+                .from(member)
+                .limit(rows)
+                .fetch());
+    }
+
+    @Benchmark
+    public List<MemberDto> fields(MemberDataset dataset) {
+        return dataset.readOnlyTx.execute(status -> dataset.queryFactory
+                .select(Projections.fields(MemberDto.class, member.username, member.age))
+                .from(member)
+                .limit(rows)
+                .fetch());
+    }
+
+    @Benchmark
+    public List<MemberDto> constructor(MemberDataset dataset) {
+        return dataset.readOnlyTx.execute(status -> dataset.queryFactory
+                .select(Projections.constructor(MemberDto.class, member.username, member.age))
+                .from(member)
+                .limit(rows)
+                .fetch());
+    }
+
+    @Benchmark
+    public List<MemberDto> queryProjection(MemberDataset dataset) {
+        return dataset.readOnlyTx.execute(status -> dataset.queryFactory
+                .select(new QMemberDto(member.username, member.age))
+                .from(member)
+                .limit(rows)
+                .fetch());
+    }
+
+    @Benchmark
+    public List<MemberDto> generatedProjection(MemberDataset dataset) {
+        return dataset.readOnlyTx.execute(status -> dataset.queryFactory
+                .select(MemberDtoProjection.of(member.username, member.age))
+                .from(member)
+                .limit(rows)
+                .fetch());
+    }
+}
@@ -3,11 +3,15 @@ package study.querydsl;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import study.querydsl.event.EventPublishingJPAQueryFactory;
 
 import javax.persistence.EntityManager;
 
 @SpringBootApplication
+@EnableScheduling
 public class QuerydslApplication {
 
 	public static void main(String[] args) {
@@ -15,7 +19,8 @@ public class QuerydslApplication {
 	}
 
 	@Bean
-	public JPAQueryFactory jpaQueryFactory(EntityManager em) {
-		return new JPAQueryFactory(em);
+	public JPAQueryFactory jpaQueryFactory(EntityManager em, ApplicationEventPublisher publisher) {
+		//벌크 연산이 실행되면 캐시가 알 수 있도록 이벤트를 발행한다.
+		return new EventPublishingJPAQueryFactory(em, publisher);
 	}
 }
@@ -0,0 +1,152 @@
+package study.querydsl.advisor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import study.querydsl.cache.MemberSearchKey;
+import study.querydsl.dto.IndexRecommendation;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DB 로 간 회원 검색의 모양(조건, 정렬)별로 횟수와 걸린 시간을 모아서 복합 인덱스를 추천한다.
+ * member.index-advisor.enabled=true 일 때만 모은다.
+ * <p>
+ * 모양마다 후보 인덱스를 만들고, 다른 후보의 앞부분에 해당하는 후보는 긴 쪽에 합친다. 이미 있는 인덱스의
+ * 앞부분이면 빼고, 검색들이 쓴 시간 합이 큰 순서로 돌려준다. DDL 은 돌려주기만 하고 실행은 사람이 한다.
+ */
+@Component
+public class IndexAdvisor {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final Map<QueryShape, ShapeStats> stats = new ConcurrentHashMap<>();
+
+    public IndexAdvisor(JdbcTemplate jdbcTemplate,
+                        @Value("${member.index-advisor.enabled:false}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+    }
+
+    public void record(MemberSearchKey key, Sort sort, long elapsedNanos) {
+        if (!enabled) {
+            return;
+        }
+        ShapeStats shapeStats = stats.computeIfAbsent(QueryShape.of(key, sort), shape -> new ShapeStats());
+        shapeStats.count.increment();
+        shapeStats.nanos.add(elapsedNanos);
+    }
+
+    public void reset() {
+        stats.clear();
+    }
+
+    public List<IndexRecommendation> recommend(int limit) {
+        //(테이블, 컬럼들) → [횟수, 시간]
+        Map<Candidate, long[]> candidates = new HashMap<>();
+        stats.forEach((shape, shapeStats) -> {
+            long count = shapeStats.count.sum();
+            long nanos = shapeStats.nanos.sum();
+            for (Candidate candidate : List.of(new Candidate("member", shape.memberColumns()), new Candidate("team", shape.teamColumns()))) {
+                if (!candidate.columns.isEmpty()) {
+                    long[] weight = candidates.computeIfAbsent(candidate, c -> new long[2]);
+                    weight[0] += count;
+                    weight[1] += nanos;
+                }
+            }
+        });
+
+        //긴 후보부터 남기고, 남긴 후보의 앞부분이면 거기에 합친다.
+        List<Candidate> byLength = new ArrayList<>(candidates.keySet());
+        byLength.sort(Comparator.comparingInt((Candidate c) -> c.columns.size()).reversed()
+                .thenComparing(c -> -candidates.get(c)[1]));
+        Map<Candidate, long[]> merged = new HashMap<>();
+        for (Candidate candidate : byLength) {
+            Candidate covering = merged.keySet().stream().filter(kept -> kept.covers(candidate)).findFirst().orElse(null);
+            if (covering == null) {
+                merged.put(candidate, candidates.get(candidate).clone());
+            } else {
+                merged.get(covering)[0] += candidates.get(candidate)[0];
+                merged.get(covering)[1] += candidates.get(candidate)[1];
+            }
+        }
+
+        Map<String, List<List<String>>> existing = new HashMap<>();
+        List<IndexRecommendation> result = new ArrayList<>();
+        merged.forEach((candidate, weight) -> {
+            List<List<String>> indexes = existing.computeIfAbsent(candidate.table, this::existingIndexes);
+            if (indexes.stream().noneMatch(index -> startsWith(index, candidate.columns))) {
+                result.add(new IndexRecommendation(candidate.table, candidate.columns, weight[0], weight[1] / 1_000_000.0, candidate.ddl()));
+            }
+        });
+        result.sort(Comparator.comparingDouble(IndexRecommendation::getTotalMillis).reversed());
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    //인덱스별 컬럼 목록. 대소문자는 DB 마다 달라서 소문자로 맞춘다.
+    private List<List<String>> existingIndexes(String table) {
+        return jdbcTemplate.execute((ConnectionCallback<List<List<String>>>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            Map<String, TreeMap<Short, String>> columnsByIndex = readIndexes(metaData, connection.getCatalog(), table);
+            if (columnsByIndex.isEmpty()) {
+                columnsByIndex = readIndexes(metaData, connection.getCatalog(), table.toUpperCase(Locale.ROOT));
+            }
+            List<List<String>> indexes = new ArrayList<>();
+            columnsByIndex.values().forEach(columns -> indexes.add(new ArrayList<>(columns.values())));
+            return indexes;
+        });
+    }
+
+    private static Map<String, TreeMap<Short, String>> readIndexes(DatabaseMetaData metaData, String catalog, String table) throws SQLException {
+        Map<String, TreeMap<Short, String>> columnsByIndex = new HashMap<>();
+        try (ResultSet rs = metaData.getIndexInfo(catalog, null, table, false, true)) {
+            while (rs.next()) {
+                String indexName = rs.getString("INDEX_NAME");
+                String column = rs.getString("COLUMN_NAME");
+                if (indexName != null && column != null) {
+                    columnsByIndex.computeIfAbsent(indexName, name -> new TreeMap<>())
+                            .put(rs.getShort("ORDINAL_POSITION"), column.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return columnsByIndex;
+    }
+
+    private static boolean startsWith(List<String> columns, List<String> prefix) {
+        return columns.size() >= prefix.size() && columns.subList(0, prefix.size()).equals(prefix);
+    }
+
+    private static class ShapeStats {
+
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+    }
+
+    @lombok.Value
+    private static class Candidate {
+
+        String table;
+        List<String> columns;
+
+        boolean covers(Candidate other) {
+            return table.equals(other.table) && startsWith(columns, other.columns);
+        }
+
+        String ddl() {
+            return "create index idx_" + table + "_" + String.join("_", columns) + " on " + table + " (" + String.join(", ", columns) + ")";
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package study.querydsl.advisor;
+
+import lombok.Value;
+import org.springframework.data.domain.Sort;
+import study.querydsl.cache.MemberSearchKey;
+import study.querydsl.cache.MemberSortProperty;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 값은 빼고 어떤 조건과 정렬이 쓰였는지만 남긴 검색 모양. 인덱스 추천은 이 단위로 모은다.
+ */
+@Value
+public class QueryShape {
+
+    boolean usernameEq;
+    boolean teamNameEq;
+    boolean ageRange;
+    //정렬 속성 이름. MemberTeamDto 필드 이름 기준
+    List<String> sortProperties;
+
+    /**
+     * 요청마다 다른 문자열로 모양이 끝없이 늘지 않도록 {@link MemberSortProperty} 에 있는 속성만 처음 나온 순서대로 남긴다.
+     */
+    public static QueryShape of(MemberSearchKey key, Sort sort) {
+        Set<String> sortProperties = new LinkedHashSet<>();
+        for (Sort.Order order : sort) {
+            if (MemberSortProperty.of(order.getProperty()) != null) {
+                sortProperties.add(order.getProperty());
+            }
+        }
+        return new QueryShape(
+                key.getUsername() != null,
+                key.getTeamName() != null,
+                key.getAgeGoe() != null || key.getAgeLoe() != null,
+                List.copyOf(sortProperties));
+    }
+
+    /**
+     * member 테이블 복합 인덱스 후보. 같음 조건, 정렬, 범위 조건 순서로 세운다. (ESR)
+     * 정렬 컬럼이 범위 컬럼보다 앞에 와야 limit 페이지를 정렬 없이 인덱스 순서로 읽을 수 있다.
+     */
+    List<String> memberColumns() {
+        List<String> columns = new ArrayList<>();
+        if (usernameEq) {
+            columns.add("username");
+        }
+        if (teamNameEq) {
+            columns.add("team_id");
+        }
+        for (String property : sortProperties) {
+            String column = memberColumnOf(property);
+            if (column == null) {
+                //팀 이름 정렬은 팀 테이블 쪽이라 그 뒤로는 인덱스 순서를 쓸 수 없다.
+                break;
+            }
+            if (!columns.contains(column)) {
+                columns.add(column);
+            }
+        }
+        if (ageRange && !columns.contains("age")) {
+            columns.add("age");
+        }
+        return columns;
+    }
+
+    /**
+     * team 테이블 인덱스 후보. 팀 이름 조건이 있을 때만
+     */
+    List<String> teamColumns() {
+        return teamNameEq ? List.of("name") : List.of();
+    }
+
+    //member_id 는 pk 라 보조 인덱스 끝에 이미 붙어 있다고 보고 넣지 않는다.
+    private static String memberColumnOf(String property) {
+        switch (property) {
+            case "memberId":
+                return null;
+            case "username":
+                return "username";
+            case "age":
+                return "age";
+            case "teamId":
+                return "team_id";
+            default:
+                return null;
+        }
+    }
+}
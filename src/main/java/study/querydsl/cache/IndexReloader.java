@@ -0,0 +1,179 @@
+package study.querydsl.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * DB 에서 통째로 다시 읽고 커밋된 변경 이벤트로 조금씩 고치는 메모리 인덱스의 공통 부분.
+ * 인덱스 상태는 이 객체의 lock 으로 보호하므로 읽는 쪽은 {@link #read}, 변경 이벤트는 {@link #onChanged} 로 넘긴다.
+ * <p>
+ * 다시 읽는 동안 들어온 변경은 replayPending 이면 다 읽은 뒤에 덮어쓰고(같은 변경을 두 번 적용해도 결과가 같아야 한다),
+ * 아니면 결과에 들어갔는지 알 수 없으므로 한 번 더 읽는다.
+ * 벌크 연산처럼 어떤 row 가 바뀌었는지 모르는 변경은 {@link #markStale} 로 바로 쓰지 않게 막고,
+ * 트랜잭션이 끝나면 {@link #afterBulkCompleted} 로 다시 읽는다.
+ *
+ * @param <S> DB 에서 새로 읽은 상태
+ */
+@Slf4j
+public class IndexReloader<S> {
+
+    private final String name;
+    private final boolean replayPending;
+    private final Supplier<S> loader;
+    private final Consumer<S> installer;
+    private final Consumer<Object> applier;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object reloading = new Object();
+    private final ExecutorService executor;
+    private final AtomicBoolean reloadQueued = new AtomicBoolean();
+
+    //다시 읽는 동안 들어온 변경. lock 으로 보호한다.
+    private List<Object> pendingEvents;
+
+    private volatile boolean loaded;
+    private volatile boolean stale;
+    //벌크 변경이 시작되거나 끝날 때마다 늘린다. 다시 읽는 동안 하나라도 겹쳤으면 stale 을 풀지 않는다.
+    private final AtomicLong bulkGeneration = new AtomicLong();
+    private final AtomicInteger bulkInFlight = new AtomicInteger();
+
+    /**
+     * @param loader    lock 밖에서 DB 를 읽어 새 상태를 만든다.
+     * @param installer 새 상태를 끼운다. write lock 안에서 부른다.
+     * @param applier   변경 이벤트 하나를 현재 상태에 반영한다. write lock 안에서 부른다.
+     */
+    public IndexReloader(String name, String threadName, boolean replayPending,
+                         Supplier<S> loader, Consumer<S> installer, Consumer<Object> applier) {
+        this.name = name;
+        this.replayPending = replayPending;
+        this.loader = loader;
+        this.installer = installer;
+        this.applier = applier;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 한 번 이상 읽었고 벌크 변경으로 막혀 있지 않은지
+     */
+    public boolean isFresh() {
+        return loaded && !stale;
+    }
+
+    public <T> T read(Supplier<T> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //시작 시 로딩, 재로딩, 주기적인 보정이 겹치지 않게 한 번에 하나만 읽는다.
+    public void reload() {
+        synchronized (reloading) {
+            lock.writeLock().lock();
+            try {
+                pendingEvents = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            boolean bulkRunning = bulkInFlight.get() > 0;
+            long generationAtStart = bulkGeneration.get();
+
+            S fresh;
+            try {
+                fresh = loader.get();
+            } catch (RuntimeException e) {
+                lock.writeLock().lock();
+                try {
+                    pendingEvents = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+
+            lock.writeLock().lock();
+            try {
+                installer.accept(fresh);
+                List<Object> pending = pendingEvents;
+                pendingEvents = null;
+                loaded = true;
+                if (replayPending) {
+                    pending.forEach(applier);
+                } else if (!pending.isEmpty()) {
+                    queueReload();
+                }
+                if (!bulkRunning && bulkGeneration.get() == generationAtStart) {
+                    stale = false;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 아직 읽기 전이면 버린다. 처음 읽는 쿼리에 이미 들어간다.
+     */
+    public void onChanged(Object event) {
+        lock.writeLock().lock();
+        try {
+            if (pendingEvents != null) {
+                pendingEvents.add(event);
+            }
+            if (loaded) {
+                applier.accept(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 벌크 변경이 시작되었다. 트랜잭션이 끝나면 반드시 {@link #afterBulkCompleted} 를 불러야 한다.
+     */
+    public void markStale() {
+        bulkInFlight.incrementAndGet();
+        bulkGeneration.incrementAndGet();
+        stale = true;
+    }
+
+    public void afterBulkCompleted() {
+        bulkGeneration.incrementAndGet();
+        bulkInFlight.decrementAndGet();
+        queueReload();
+    }
+
+    //벌크 청크가 연달아 와도 대기 중인 재로딩은 하나만 둔다.
+    public void queueReload() {
+        if (reloadQueued.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                reloadQueued.set(false);
+                try {
+                    reload();
+                } catch (RuntimeException e) {
+                    log.warn("{} 재로딩 실패", name, e);
+                }
+            });
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
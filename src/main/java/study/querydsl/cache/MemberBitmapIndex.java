@@ -0,0 +1,284 @@
+package study.querydsl.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.event.BulkChangedEvent;
+import study.querydsl.event.BulkFinishedEvent;
+import study.querydsl.event.BulkStartedEvent;
+import study.querydsl.event.ChangeType;
+import study.querydsl.event.MemberChangedEvent;
+import study.querydsl.event.MemberSnapshot;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * 팀 id 별, 나이 별 압축 비트맵(Roaring) 인덱스. member.bitmap-index.enabled=true 일 때만 올라온다.
+ * 회원마다 순번(ordinal)을 붙여 두고, 팀 이름/나이 조건을 비트맵 OR/AND 로 바꿔서 count 는 cardinality 로 구한다.
+ * 회원 하나가 바뀌면 비트 몇 개만 고치면 된다.
+ * <p>
+ * 회원 이름 조건은 인덱스에 없으므로 처리하지 않는다. 팀 이름은 {@link TeamDictionary} 로 팀 id 로 바꾼다.
+ * 검색 쿼리처럼 팀이 있는 회원만 담는다. 벌크 연산이 오면 다시 읽을 때까지 쓰지 않는다.
+ */
+@Slf4j
+@Component
+public class MemberBitmapIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final EntityManagerFactory emf;
+    private final TeamDictionary teamDictionary;
+    private final boolean enabled;
+    private final IndexReloader<Bitmaps> reloader;
+
+    //reloader 의 lock 으로 보호한다.
+    private Bitmaps bitmaps = new Bitmaps();
+
+    public MemberBitmapIndex(EntityManagerFactory emf, TeamDictionary teamDictionary,
+                             @Value("${member.bitmap-index.enabled:false}") boolean enabled) {
+        this.emf = emf;
+        this.teamDictionary = teamDictionary;
+        this.enabled = enabled;
+        this.reloader = new IndexReloader<>("회원 비트맵 인덱스", "member-bitmap-reload", true,
+                this::load, fresh -> bitmaps = fresh, event -> apply((MemberChangedEvent) event));
+    }
+
+    //팀 사전에 없는 팀 이름이면 0 건이 아니라 모르는 것이므로 DB 로 보낸다.
+    public boolean isUsable(MemberSearchKey key) {
+        return enabled && reloader.isFresh() && TransactionCallbacks.isReadOnlyOrNone()
+                && key.getUsername() == null
+                && (key.getTeamName() == null || teamDictionary.isUsable() && teamDictionary.idsOf(key.getTeamName()) != null);
+    }
+
+    public long count(MemberSearchKey key) {
+        return reloader.read(() -> {
+            RoaringBitmap teams = teamBitmap(key);
+            RoaringBitmap ages = ageBitmap(key);
+            if (teams == null && ages == null) {
+                return bitmaps.live.getLongCardinality();
+            }
+            if (teams == null || ages == null) {
+                return (teams != null ? teams : ages).getLongCardinality();
+            }
+            return (long) RoaringBitmap.andCardinality(teams, ages);
+        });
+    }
+
+    /**
+     * member.id 순서의 한 페이지에 들어갈 id 들. 순번이 id 순서와 어긋나 있으면(다른 곳에서 더 작은 id 가 들어온 경우) null
+     */
+    public List<Long> pageIds(MemberSearchKey key, long offset, int limit) {
+        return reloader.read(() -> {
+            if (!bitmaps.idOrdered) {
+                return null;
+            }
+            RoaringBitmap teams = teamBitmap(key);
+            RoaringBitmap ages = ageBitmap(key);
+            RoaringBitmap matched = teams == null && ages == null ? bitmaps.live
+                    : teams == null ? ages
+                    : ages == null ? teams
+                    : RoaringBitmap.and(teams, ages);
+
+            List<Long> ids = new ArrayList<>(limit);
+            if (offset >= matched.getLongCardinality()) {
+                return ids;
+            }
+            PeekableIntIterator ordinals = matched.getIntIterator();
+            ordinals.advanceIfNeeded(matched.select((int) offset));
+            while (ordinals.hasNext() && ids.size() < limit) {
+                ids.add(bitmaps.idOf[ordinals.next()]);
+            }
+            return ids;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reload() {
+        if (enabled) {
+            reloader.reload();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMemberChanged(MemberChangedEvent event) {
+        if (enabled) {
+            reloader.onChanged(event);
+        }
+    }
+
+    @EventListener
+    public void onBulkChanged(BulkChangedEvent event) {
+        if (enabled && isIndexed(event.getEntityType())) {
+            reloader.markStale();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION, fallbackExecution = true)
+    public void afterBulkChanged(BulkChangedEvent event) {
+        if (enabled && isIndexed(event.getEntityType())) {
+            reloader.afterBulkCompleted();
+        }
+    }
+
+    @EventListener
+    public void onBulkStarted(BulkStartedEvent event) {
+        if (enabled && isIndexed(event.getEntityType())) {
+            reloader.markStale();
+        }
+    }
+
+    @EventListener
+    public void onBulkFinished(BulkFinishedEvent event) {
+        if (enabled && isIndexed(event.getEntityType())) {
+            reloader.afterBulkCompleted();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloader.shutdown();
+    }
+
+    private static boolean isIndexed(Class<?> entityType) {
+        return entityType == Member.class || entityType == Team.class;
+    }
+
+    private Bitmaps load() {
+        Bitmaps fresh = new Bitmaps();
+        EntityManager em = emf.createEntityManager();
+        try (Stream<Object[]> rows = em.createQuery(
+                "select m.id, m.age, m.team.id from Member m where m.team is not null order by m.id", Object[].class)
+                .setHint("org.hibernate.fetchSize", 1000)
+                .setHint("org.hibernate.readOnly", true)
+                .getResultStream()) {
+            rows.forEach(row -> fresh.put((Long) row[0], (Integer) row[1], (Long) row[2]));
+        } finally {
+            em.close();
+        }
+        fresh.runOptimize();
+        log.info("회원 비트맵 인덱스 로딩 members={} teams={} ages={}",
+                fresh.live.getCardinality(), fresh.byTeam.size(), fresh.byAge.size());
+        return fresh;
+    }
+
+    private void apply(MemberChangedEvent event) {
+        MemberSnapshot after = event.getAfter();
+        if (event.getType() == ChangeType.DELETE || after == null || after.getTeamId() == null) {
+            bitmaps.remove(event.getMemberId());
+        } else {
+            bitmaps.put(event.getMemberId(), after.getAge(), after.getTeamId());
+        }
+    }
+
+    //팀 이름 조건이 없으면 null
+    private RoaringBitmap teamBitmap(MemberSearchKey key) {
+        if (key.getTeamName() == null) {
+            return null;
+        }
+        Set<Long> teamIds = teamDictionary.idsOf(key.getTeamName());
+        //isUsable 뒤에 사전에서 빠졌다면 팀이 삭제된 것이고, 삭제된 팀에는 회원이 없다.
+        if (teamIds == null) {
+            return new RoaringBitmap();
+        }
+        return or(teamIds.stream().map(bitmaps.byTeam::get).filter(bitmap -> bitmap != null).toArray(RoaringBitmap[]::new));
+    }
+
+    //나이 조건이 없으면 null
+    private RoaringBitmap ageBitmap(MemberSearchKey key) {
+        if (key.getAgeGoe() == null && key.getAgeLoe() == null) {
+            return null;
+        }
+        int from = key.getAgeGoe() != null ? key.getAgeGoe() : Integer.MIN_VALUE;
+        int to = key.getAgeLoe() != null ? key.getAgeLoe() : Integer.MAX_VALUE;
+        if (from > to) {
+            return new RoaringBitmap();
+        }
+        Collection<RoaringBitmap> ages = bitmaps.byAge.subMap(from, true, to, true).values();
+        return or(ages.toArray(new RoaringBitmap[0]));
+    }
+
+    private static RoaringBitmap or(RoaringBitmap[] bitmaps) {
+        if (bitmaps.length == 0) {
+            return new RoaringBitmap();
+        }
+        return bitmaps.length == 1 ? bitmaps[0] : FastAggregation.or(bitmaps);
+    }
+
+    private static class Bitmaps {
+
+        final Map<Long, Integer> ordinalOf = new HashMap<>();
+        long[] idOf = new long[INITIAL_CAPACITY];
+        int[] ageOf = new int[INITIAL_CAPACITY];
+        long[] teamOf = new long[INITIAL_CAPACITY];
+        int nextOrdinal;
+        //순번을 id 오름차순으로 붙였는지. 그래야 순번 순서가 곧 id 순서다.
+        boolean idOrdered = true;
+
+        final RoaringBitmap live = new RoaringBitmap();
+        final Map<Long, RoaringBitmap> byTeam = new HashMap<>();
+        final NavigableMap<Integer, RoaringBitmap> byAge = new TreeMap<>();
+
+        void put(long id, int age, long teamId) {
+            Integer ordinal = ordinalOf.get(id);
+            if (ordinal == null) {
+                if (nextOrdinal > 0 && idOf[nextOrdinal - 1] > id) {
+                    idOrdered = false;
+                }
+                ordinal = nextOrdinal++;
+                if (ordinal == idOf.length) {
+                    idOf = Arrays.copyOf(idOf, ordinal * 2);
+                    ageOf = Arrays.copyOf(ageOf, ordinal * 2);
+                    teamOf = Arrays.copyOf(teamOf, ordinal * 2);
+                }
+                ordinalOf.put(id, ordinal);
+                idOf[ordinal] = id;
+                live.add(ordinal);
+            } else {
+                byAge.get(ageOf[ordinal]).remove(ordinal);
+                byTeam.get(teamOf[ordinal]).remove(ordinal);
+            }
+            ageOf[ordinal] = age;
+            teamOf[ordinal] = teamId;
+            byAge.computeIfAbsent(age, a -> new RoaringBitmap()).add(ordinal);
+            byTeam.computeIfAbsent(teamId, t -> new RoaringBitmap()).add(ordinal);
+        }
+
+        //순번은 다시 쓰지 않는다. 빈 자리는 다음 재로딩 때 정리된다.
+        void remove(long id) {
+            Integer ordinal = ordinalOf.remove(id);
+            if (ordinal == null) {
+                return;
+            }
+            live.remove(ordinal);
+            byAge.get(ageOf[ordinal]).remove(ordinal);
+            byTeam.get(teamOf[ordinal]).remove(ordinal);
+        }
+
+        void runOptimize() {
+            live.runOptimize();
+            byTeam.values().forEach(RoaringBitmap::runOptimize);
+            byAge.values().forEach(RoaringBitmap::runOptimize);
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package study.querydsl.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.event.BulkChangedEvent;
+import study.querydsl.event.BulkFinishedEvent;
+import study.querydsl.event.BulkStartedEvent;
+import study.querydsl.event.ChangeType;
+import study.querydsl.event.MemberChangedEvent;
+import study.querydsl.event.MemberSnapshot;
+import study.querydsl.event.TeamChangedEvent;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 회원 검색용 컬럼형 메모리 인덱스. member.search.engine=columnar 일 때만 올라온다.
+ * id, 나이, 팀 id 는 primitive 배열로, 회원 이름은 사전 코드(int)로 들고 있어서
+ * MemberSearchCondition 을 DB 없이 배열 스캔만으로 처리한다.
+ * <p>
+ * 검색 쿼리처럼 팀이 있는 회원만 담는다. 커밋된 변경 이벤트로 갱신하고, 벌크 연산이 오면 다시 읽을 때까지 쓰지 않는다.
+ * 행은 id 순으로 정렬된 본체와 순서가 어긋난 채 뒤에 붙은 꼬리로 나뉘고, 삭제는 표시만 해 두었다가 한꺼번에 정리한다.
+ */
+@Slf4j
+@Component
+public class MemberColumnarIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_TAIL = 1024;
+
+    private final EntityManagerFactory emf;
+    private final boolean enabled;
+    private final IndexReloader<Columns> reloader;
+
+    //아래 필드는 reloader 의 lock 으로 보호한다.
+    private long[] ids = new long[0];
+    private int[] ages = new int[0];
+    private long[] teamIds = new long[0];
+    private int[] usernameCodes = new int[0];
+    private int size;
+    //ids[0, sortedSize) 는 id 오름차순이다.
+    private int sortedSize;
+    private BitSet deleted = new BitSet();
+    private int deletedCount;
+    private List<String> usernames = new ArrayList<>();
+    private Map<String, Integer> usernameCodeOf = new HashMap<>();
+    private Map<Long, String> teamNames = new HashMap<>();
+
+    public MemberColumnarIndex(EntityManagerFactory emf,
+                               @Value("${member.search.engine:database}") String engine) {
+        this.emf = emf;
+        this.enabled = "columnar".equalsIgnoreCase(engine);
+        this.reloader = new IndexReloader<>("회원 컬럼 인덱스", "member-columnar-reload", true,
+                this::load, this::install, this::apply);
+    }
+
+    //모르는 팀 이름이면 0 건이 아니라 아직 반영되지 않은 것일 수 있으므로 DB 로 보낸다.
+    public boolean isUsable(MemberSearchKey key) {
+        return enabled && reloader.isFresh() && TransactionCallbacks.isReadOnlyOrNone()
+                && (key.getTeamName() == null || reloader.read(() -> teamNames.containsValue(key.getTeamName())));
+    }
+
+    /**
+     * @return member.id 순서
+     */
+    public List<MemberTeamDto> search(MemberSearchKey key) {
+        return reloader.read(() -> {
+            int[] rows = match(key);
+            sortRows(rows, Sort.unsorted());
+            return toDtos(rows, 0, rows.length);
+        });
+    }
+
+    /**
+     * 정렬이 없으면 member.id 순서이고, 정렬이 있어도 member.id 를 마지막 기준으로 붙인다. (검색 쿼리와 같다)
+     */
+    public Page<MemberTeamDto> searchPage(MemberSearchKey key, Pageable pageable) {
+        return reloader.read(() -> {
+            int[] rows = match(key);
+            sortRows(rows, MemberSortProperty.sortable(pageable.getSort()));
+            int from = (int) Math.min(pageable.getOffset(), rows.length);
+            int to = Math.min(from + pageable.getPageSize(), rows.length);
+            return new PageImpl<>(toDtos(rows, from, to), pageable, rows.length);
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reload() {
+        if (enabled) {
+            reloader.reload();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMemberChanged(MemberChangedEvent event) {
+        if (enabled) {
+            reloader.onChanged(event);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTeamChanged(TeamChangedEvent event) {
+        if (enabled) {
+            reloader.onChanged(event);
+        }
+    }
+
+    @EventListener
+    public void onBulkChanged(BulkChangedEvent event) {
+        if (enabled && isIndexed(event.getEntityType())) {
+            reloader.markStale();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION, fallbackExecution = true)
+    public void afterBulkChanged(BulkChangedEvent event) {
+        if (enabled && isIndexed(event.getEntityType())) {
+            reloader.afterBulkCompleted();
+        }
+    }
+
+    @EventListener
+    public void onBulkStarted(BulkStartedEvent event) {
+        if (enabled && isIndexed(event.getEntityType())) {
+            reloader.markStale();
+        }
+    }
+
+    @EventListener
+    public void onBulkFinished(BulkFinishedEvent event) {
+        if (enabled && isIndexed(event.getEntityType())) {
+            reloader.afterBulkCompleted();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloader.shutdown();
+    }
+
+    private static boolean isIndexed(Class<?> entityType) {
+        return entityType == Member.class || entityType == Team.class;
+    }
+
+    private Columns load() {
+        Columns columns = new Columns();
+        EntityManager em = emf.createEntityManager();
+        try {
+            for (Object[] row : em.createQuery("select t.id, t.name from Team t", Object[].class).getResultList()) {
+                columns.teamNames.put((Long) row[0], (String) row[1]);
+            }
+            try (Stream<Object[]> rows = em.createQuery(
+                    "select m.id, m.username, m.age, m.team.id from Member m where m.team is not null order by m.id",
+                    Object[].class)
+                    .setHint("org.hibernate.fetchSize", 1000)
+                    .setHint("org.hibernate.readOnly", true)
+                    .getResultStream()) {
+                rows.forEach(row -> columns.append((Long) row[0], (String) row[1], (Integer) row[2], (Long) row[3]));
+            }
+        } finally {
+            em.close();
+        }
+        log.info("회원 컬럼 인덱스 로딩 members={} teams={}", columns.size, columns.teamNames.size());
+        return columns;
+    }
+
+    private void install(Columns columns) {
+        ids = columns.ids;
+        ages = columns.ages;
+        teamIds = columns.teamIds;
+        usernameCodes = columns.usernameCodes;
+        size = columns.size;
+        sortedSize = columns.size;
+        deleted = new BitSet();
+        deletedCount = 0;
+        usernames = columns.usernames;
+        usernameCodeOf = columns.usernameCodeOf;
+        teamNames = columns.teamNames;
+    }
+
+    private void apply(Object event) {
+        if (event instanceof MemberChangedEvent) {
+            apply((MemberChangedEvent) event);
+        } else {
+            apply((TeamChangedEvent) event);
+        }
+    }
+
+    private void apply(MemberChangedEvent event) {
+        int row = positionOf(event.getMemberId());
+        MemberSnapshot after = event.getAfter();
+        if (event.getType() == ChangeType.DELETE || after == null || after.getTeamId() == null) {
+            if (row >= 0) {
+                deleted.set(row);
+                deletedCount++;
+                compactIfNeeded();
+            }
+            return;
+        }
+        if (row < 0) {
+            ensureCapacity(size + 1);
+            row = size++;
+            ids[row] = event.getMemberId();
+            //id 순서대로 들어오면 정렬된 본체를 그대로 늘린다.
+            if (sortedSize == row && (row == 0 || ids[row - 1] < ids[row])) {
+                sortedSize++;
+            }
+        }
+        ages[row] = after.getAge();
+        teamIds[row] = after.getTeamId();
+        usernameCodes[row] = codeOf(after.getUsername());
+        compactIfNeeded();
+    }
+
+    private void apply(TeamChangedEvent event) {
+        if (event.getType() == ChangeType.DELETE) {
+            teamNames.remove(event.getTeamId());
+        } else {
+            teamNames.put(event.getTeamId(), event.getAfterName());
+        }
+    }
+
+    //지워진 행은 제외한다.
+    private int positionOf(long memberId) {
+        int row = Arrays.binarySearch(ids, 0, sortedSize, memberId);
+        if (row >= 0 && !deleted.get(row)) {
+            return row;
+        }
+        for (int i = sortedSize; i < size; i++) {
+            if (ids[i] == memberId && !deleted.get(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int codeOf(String username) {
+        Integer code = usernameCodeOf.get(username);
+        if (code == null) {
+            code = usernames.size();
+            usernames.add(username);
+            usernameCodeOf.put(username, code);
+        }
+        return code;
+    }
+
+    //꼬리가 길어지거나 지워진 행이 1/4 을 넘으면 id 순으로 다시 채운다.
+    private void compactIfNeeded() {
+        if (size - sortedSize <= MAX_TAIL && deletedCount * 4 <= size) {
+            return;
+        }
+        int[] live = new int[size - deletedCount];
+        int n = 0;
+        for (int row = 0; row < size; row++) {
+            if (!deleted.get(row)) {
+                live[n++] = row;
+            }
+        }
+        long[] currentIds = ids;
+        sort(live, (left, right) -> Long.compare(currentIds[left], currentIds[right]));
+
+        Columns columns = new Columns();
+        for (int row : live) {
+            columns.append(ids[row], usernames.get(usernameCodes[row]), ages[row], teamIds[row]);
+        }
+        ids = columns.ids;
+        ages = columns.ages;
+        teamIds = columns.teamIds;
+        usernameCodes = columns.usernameCodes;
+        usernames = columns.usernames;
+        usernameCodeOf = columns.usernameCodeOf;
+        size = columns.size;
+        sortedSize = columns.size;
+        deleted = new BitSet();
+        deletedCount = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, Math.max(INITIAL_CAPACITY, ids.length * 2));
+        ids = Arrays.copyOf(ids, newCapacity);
+        ages = Arrays.copyOf(ages, newCapacity);
+        teamIds = Arrays.copyOf(teamIds, newCapacity);
+        usernameCodes = Arrays.copyOf(usernameCodes, newCapacity);
+    }
+
+    private int[] match(MemberSearchKey key) {
+        int usernameCode = -1;
+        if (key.getUsername() != null) {
+            Integer code = usernameCodeOf.get(key.getUsername());
+            if (code == null) {
+                return new int[0];
+            }
+            usernameCode = code;
+        }
+        long[] teamFilter = null;
+        if (key.getTeamName() != null) {
+            teamFilter = teamNames.entrySet().stream()
+                    .filter(entry -> key.getTeamName().equals(entry.getValue()))
+                    .mapToLong(Map.Entry::getKey)
+                    .toArray();
+            if (teamFilter.length == 0) {
+                return new int[0];
+            }
+        }
+        int ageGoe = key.getAgeGoe() != null ? key.getAgeGoe() : Integer.MIN_VALUE;
+        int ageLoe = key.getAgeLoe() != null ? key.getAgeLoe() : Integer.MAX_VALUE;
+
+        int[] result = new int[16];
+        int n = 0;
+        for (int row = 0; row < size; row++) {
+            if (ages[row] < ageGoe || ages[row] > ageLoe) {
+                continue;
+            }
+            if (usernameCode >= 0 && usernameCodes[row] != usernameCode) {
+                continue;
+            }
+            if (teamFilter != null && !contains(teamFilter, teamIds[row])) {
+                continue;
+            }
+            if (deleted.get(row)) {
+                continue;
+            }
+            if (n == result.length) {
+                result = Arrays.copyOf(result, n * 2);
+            }
+            result[n++] = row;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static boolean contains(long[] values, long value) {
+        for (long candidate : values) {
+            if (candidate == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void sortRows(int[] rows, Sort sort) {
+        Sort.Order idOrder = sort.getOrderFor("memberId");
+        boolean idDescending = idOrder != null && idOrder.isDescending();
+        //본체만 있고 id 오름차순이면 스캔 순서가 이미 답이다.
+        if (sort.stream().allMatch(order -> order.getProperty().equals("memberId"))
+                && !idDescending && sortedSize == size) {
+            return;
+        }
+
+        RowComparator comparator = null;
+        for (Sort.Order order : sort) {
+            if (order.getProperty().equals("memberId")) {
+                continue;
+            }
+            RowComparator next = comparatorOf(MemberSortProperty.of(order.getProperty()));
+            next = order.isAscending() ? next : next.reversed();
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        RowComparator byId = comparatorOf(MemberSortProperty.MEMBER_ID);
+        byId = idDescending ? byId.reversed() : byId;
+        sort(rows, comparator == null ? byId : comparator.thenComparing(byId));
+    }
+
+    private RowComparator comparatorOf(MemberSortProperty property) {
+        switch (property) {
+            case USERNAME:
+                Comparator<String> byName = Comparator.nullsLast(Comparator.naturalOrder());
+                return (left, right) -> usernameCodes[left] == usernameCodes[right] ? 0
+                        : byName.compare(usernames.get(usernameCodes[left]), usernames.get(usernameCodes[right]));
+            case AGE:
+                return (left, right) -> Integer.compare(ages[left], ages[right]);
+            case TEAM_ID:
+                return (left, right) -> Long.compare(teamIds[left], teamIds[right]);
+            case TEAM_NAME:
+                Comparator<String> byTeamName = Comparator.nullsLast(Comparator.naturalOrder());
+                return (left, right) -> teamIds[left] == teamIds[right] ? 0
+                        : byTeamName.compare(teamNames.get(teamIds[left]), teamNames.get(teamIds[right]));
+            case MEMBER_ID:
+            default:
+                return (left, right) -> Long.compare(ids[left], ids[right]);
+        }
+    }
+
+    //행 번호를 Integer 로 감싸지 않고 int[] 그대로 병합 정렬한다.
+    private static void sort(int[] rows, RowComparator comparator) {
+        int[] buffer = new int[rows.length];
+        int[] from = rows;
+        int[] to = buffer;
+        for (int width = 1; width < rows.length; width *= 2) {
+            for (int low = 0; low < rows.length; low += width * 2) {
+                int middle = Math.min(low + width, rows.length);
+                int high = Math.min(low + width * 2, rows.length);
+                int left = low;
+                int right = middle;
+                for (int i = low; i < high; i++) {
+                    if (left < middle && (right >= high || comparator.compare(from[left], from[right]) <= 0)) {
+                        to[i] = from[left++];
+                    } else {
+                        to[i] = from[right++];
+                    }
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != rows) {
+            System.arraycopy(from, 0, rows, 0, rows.length);
+        }
+    }
+
+    private interface RowComparator {
+
+        int compare(int left, int right);
+
+        default RowComparator reversed() {
+            return (left, right) -> compare(right, left);
+        }
+
+        default RowComparator thenComparing(RowComparator next) {
+            return (left, right) -> {
+                int result = compare(left, right);
+                return result != 0 ? result : next.compare(left, right);
+            };
+        }
+    }
+
+    private List<MemberTeamDto> toDtos(int[] rows, int from, int to) {
+        List<MemberTeamDto> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            int row = rows[i];
+            result.add(new MemberTeamDto(ids[row], usernames.get(usernameCodes[row]), ages[row],
+                    teamIds[row], teamNames.get(teamIds[row])));
+        }
+        return result;
+    }
+
+    //새로 채우는 컬럼 묶음. 로딩과 정리에 같이 쓴다.
+    private static class Columns {
+
+        long[] ids = new long[INITIAL_CAPACITY];
+        int[] ages = new int[INITIAL_CAPACITY];
+        long[] teamIds = new long[INITIAL_CAPACITY];
+        int[] usernameCodes = new int[INITIAL_CAPACITY];
+        int size;
+        final List<String> usernames = new ArrayList<>();
+        final Map<String, Integer> usernameCodeOf = new HashMap<>();
+        //로딩할 때만 채운다.
+        final Map<Long, String> teamNames = new HashMap<>();
+
+        void append(long id, String username, int age, long teamId) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                ages = Arrays.copyOf(ages, capacity);
+                teamIds = Arrays.copyOf(teamIds, capacity);
+                usernameCodes = Arrays.copyOf(usernameCodes, capacity);
+            }
+            Integer code = usernameCodeOf.get(username);
+            if (code == null) {
+                code = usernames.size();
+                usernames.add(username);
+                usernameCodeOf.put(username, code);
+            }
+            ids[size] = id;
+            ages[size] = age;
+            teamIds[size] = teamId;
+            usernameCodes[size] = code;
+            size++;
+        }
+    }
+}
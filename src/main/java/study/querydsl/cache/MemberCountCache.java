@@ -0,0 +1,213 @@
+package study.querydsl.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.config.ReplicaDataSourceProperties;
+import study.querydsl.event.BulkChangedEvent;
+import study.querydsl.event.BulkFinishedEvent;
+import study.querydsl.event.BulkStartedEvent;
+import study.querydsl.event.MemberChangedEvent;
+import study.querydsl.event.TeamChangedEvent;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * 페이징 count 쿼리 결과를 조건별로 들고 있는 캐시.
+ * max-staleness 보다 오래된 값은 쓰지 않고, refresh-after 가 지나면 값을 돌려주면서 뒤에서 다시 센다.
+ * 회원/팀 변경 이벤트가 오면 영향을 받을 수 있는 조건의 값을 버린다.
+ */
+@Slf4j
+@Component
+public class MemberCountCache {
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final long maxStalenessNanos;
+    private final long refreshAfterNanos;
+    private final LinkedHashMap<MemberSearchKey, CountEntry> entries;
+    private final ThreadPoolExecutor refresher;
+    private final TransactionTemplate refreshTx;
+
+    private long generation;
+    //레플리카가 있으면 무효화 직후에는 변경 전 row 를 읽을 수 있으므로 replica-lag 동안 캐시에 넣지 않는다.
+    private final long replicaLagNanos;
+    private long invalidatedAt;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public MemberCountCache(PlatformTransactionManager transactionManager,
+                            @Value("${member.count-cache.enabled:true}") boolean enabled,
+                            @Value("${member.count-cache.max-size:1000}") int maxSize,
+                            @Value("${member.count-cache.max-staleness:30s}") Duration maxStaleness,
+                            @Value("${member.count-cache.refresh-after:10s}") Duration refreshAfter,
+                            @Value("${member.count-cache.refresh-timeout:5s}") Duration refreshTimeout,
+                            ObjectProvider<ReplicaDataSourceProperties> replicaProperties) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.maxStalenessNanos = maxStaleness.toNanos();
+        this.refreshAfterNanos = refreshAfter.toNanos();
+        this.replicaLagNanos = ReplicaLag.nanos(replicaProperties);
+        this.invalidatedAt = System.nanoTime() - replicaLagNanos;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<MemberSearchKey, CountEntry> eldest) {
+                if (size() > MemberCountCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        //요청 스레드의 트랜잭션 밖에서 세므로 읽기 전용(레플리카가 있으면 레플리카)으로 열고, 트랜잭션 타임아웃이 쿼리 타임아웃으로 걸린다.
+        this.refreshTx = new TransactionTemplate(transactionManager);
+        refreshTx.setReadOnly(true);
+        refreshTx.setTimeout((int) Math.max(1, refreshTimeout.toSeconds()));
+        //갱신 작업은 밀려도 다음 요청이 다시 시도하면 되므로 큐가 차면 버린다.
+        this.refresher = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(100), runnable -> {
+                    Thread thread = new Thread(runnable, "member-count-refresher");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * 캐시에 값이 있으면 돌려주고, 없거나 너무 오래되었으면 counter 로 직접 센다.
+     */
+    public long count(MemberSearchKey key, LongSupplier counter) {
+        if (!enabled || !TransactionCallbacks.isReadOnlyOrNone()) {
+            return counter.getAsLong();
+        }
+
+        long now = System.nanoTime();
+        long generationAtStart;
+        synchronized (this) {
+            CountEntry entry = entries.get(key);
+            if (entry != null && now - entry.loadedAt < maxStalenessNanos) {
+                hits++;
+                if (now - entry.loadedAt >= refreshAfterNanos && !entry.refreshing) {
+                    entry.refreshing = true;
+                    refresher.execute(() -> refresh(key, counter, entry));
+                }
+                return entry.total;
+            }
+            misses++;
+            generationAtStart = generation;
+        }
+
+        long total = counter.getAsLong();
+        store(key, total, generationAtStart);
+        return total;
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        generation++;
+        invalidatedAt = System.nanoTime();
+        invalidations++;
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, invalidations, entries.size(), maxSize);
+    }
+
+    @EventListener
+    public void onMemberChanged(MemberChangedEvent event) {
+        evictNowAndAfterCompletion(key -> key.mayMatch(event.getBefore()) || key.mayMatch(event.getAfter()));
+    }
+
+    @EventListener
+    public void onTeamChanged(TeamChangedEvent event) {
+        evictNowAndAfterCompletion(key -> key.getTeamName() != null
+                && (key.getTeamName().equals(event.getBeforeName()) || key.getTeamName().equals(event.getAfterName())));
+    }
+
+    @EventListener
+    public void onBulkChanged(BulkChangedEvent event) {
+        invalidateAll();
+        TransactionCallbacks.afterCompletion(this::invalidateAll);
+    }
+
+    @EventListener
+    public void onBulkStarted(BulkStartedEvent event) {
+        invalidateAll();
+    }
+
+    //작업 중에 채워진 값은 일부 청크만 반영된 것이므로 끝나면 다시 지운다.
+    @EventListener
+    public void onBulkFinished(BulkFinishedEvent event) {
+        invalidateAll();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    private void refresh(MemberSearchKey key, LongSupplier counter, CountEntry staleEntry) {
+        long generationAtStart = generation();
+        try {
+            Long total = refreshTx.execute(status -> counter.getAsLong());
+            store(key, total, generationAtStart);
+        } catch (RuntimeException e) {
+            log.warn("count 갱신 실패 key={}", key, e);
+        } finally {
+            staleEntry.refreshing = false;
+        }
+    }
+
+    private synchronized long generation() {
+        return generation;
+    }
+
+    private synchronized void store(MemberSearchKey key, long total, long generationAtStart) {
+        if (generation != generationAtStart || System.nanoTime() - invalidatedAt < replicaLagNanos) {
+            return;
+        }
+        entries.put(key, new CountEntry(total, System.nanoTime()));
+    }
+
+    private void evictNowAndAfterCompletion(Predicate<MemberSearchKey> matcher) {
+        evict(matcher);
+        TransactionCallbacks.afterCompletion(() -> evict(matcher));
+    }
+
+    private synchronized void evict(Predicate<MemberSearchKey> matcher) {
+        generation++;
+        invalidatedAt = System.nanoTime();
+        invalidations++;
+        Iterator<MemberSearchKey> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            if (matcher.test(it.next())) {
+                it.remove();
+            }
+        }
+    }
+
+    private static class CountEntry {
+        final long total;
+        final long loadedAt;
+        volatile boolean refreshing;
+
+        CountEntry(long total, long loadedAt) {
+            this.total = total;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package study.querydsl.cache;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import study.querydsl.config.ReplicaDataSourceProperties;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.event.BulkChangedEvent;
+import study.querydsl.event.BulkFinishedEvent;
+import study.querydsl.event.BulkStartedEvent;
+import study.querydsl.event.MemberChangedEvent;
+import study.querydsl.event.TeamChangedEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * search(condition) 결과를 조건별로 들고 있는 LRU 캐시. 결과가 max-rows 건보다 많으면 넣지 않는다.
+ * 회원/팀 변경 이벤트가 오면 영향을 받을 수 있는 항목만 지우고, 벌크 연산이면 전부 지운다.
+ */
+@Component
+public class MemberSearchCache {
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final int maxRows;
+    private final LinkedHashMap<MemberSearchKey, List<MemberTeamDto>> entries;
+
+    //무효화가 일어날 때마다 올라간다. 조회 도중 무효화가 끼어들면 그 결과는 캐시에 넣지 않는다.
+    private long generation;
+    //레플리카가 있으면 무효화 직후에는 변경 전 row 를 읽을 수 있으므로 replica-lag 동안 캐시에 넣지 않는다.
+    private final long replicaLagNanos;
+    private long invalidatedAt;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public MemberSearchCache(@Value("${member.search-cache.enabled:true}") boolean enabled,
+                             @Value("${member.search-cache.max-size:1000}") int maxSize,
+                             @Value("${member.search-cache.max-rows:1000}") int maxRows,
+                             ObjectProvider<ReplicaDataSourceProperties> replicaProperties) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.maxRows = maxRows;
+        this.replicaLagNanos = ReplicaLag.nanos(replicaProperties);
+        this.invalidatedAt = System.nanoTime() - replicaLagNanos;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<MemberSearchKey, List<MemberTeamDto>> eldest) {
+                if (size() > MemberSearchCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isUsable() {
+        return enabled && TransactionCallbacks.isReadOnlyOrNone();
+    }
+
+    public synchronized long generation() {
+        return generation;
+    }
+
+    public synchronized List<MemberTeamDto> get(MemberSearchKey key) {
+        List<MemberTeamDto> rows = entries.get(key);
+        if (rows == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return rows;
+    }
+
+    public synchronized void put(MemberSearchKey key, List<MemberTeamDto> rows, long generationAtStart) {
+        //넓은 검색 결과까지 들고 있으면 항목 수 제한으로는 메모리를 막을 수 없다.
+        if (rows.size() > maxRows
+                || generation != generationAtStart || System.nanoTime() - invalidatedAt < replicaLagNanos) {
+            return;
+        }
+        entries.put(key, Collections.unmodifiableList(copyOf(rows)));
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        generation++;
+        invalidatedAt = System.nanoTime();
+        invalidations++;
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, invalidations, entries.size(), maxSize);
+    }
+
+    @EventListener
+    public void onMemberChanged(MemberChangedEvent event) {
+        evictNowAndAfterCompletion((key, rows) -> key.mayMatch(event.getBefore())
+                || key.mayMatch(event.getAfter())
+                || containsMember(rows, event.getMemberId()));
+    }
+
+    @EventListener
+    public void onTeamChanged(TeamChangedEvent event) {
+        evictNowAndAfterCompletion((key, rows) -> (key.getTeamName() != null
+                && (key.getTeamName().equals(event.getBeforeName()) || key.getTeamName().equals(event.getAfterName())))
+                || containsTeam(rows, event.getTeamId()));
+    }
+
+    @EventListener
+    public void onBulkChanged(BulkChangedEvent event) {
+        invalidateAll();
+        TransactionCallbacks.afterCompletion(this::invalidateAll);
+    }
+
+    @EventListener
+    public void onBulkStarted(BulkStartedEvent event) {
+        invalidateAll();
+    }
+
+    //작업 중에 채워진 값은 일부 청크만 반영된 것이므로 끝나면 다시 지운다.
+    @EventListener
+    public void onBulkFinished(BulkFinishedEvent event) {
+        invalidateAll();
+    }
+
+    /**
+     * 커밋 전에 다른 트랜잭션이 예전 값을 다시 채워 넣을 수 있어서 트랜잭션이 끝난 뒤에 한 번 더 지운다.
+     */
+    private void evictNowAndAfterCompletion(EntryMatcher matcher) {
+        evict(matcher);
+        TransactionCallbacks.afterCompletion(() -> evict(matcher));
+    }
+
+    private synchronized void evict(EntryMatcher matcher) {
+        generation++;
+        invalidatedAt = System.nanoTime();
+        invalidations++;
+        Iterator<Map.Entry<MemberSearchKey, List<MemberTeamDto>>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<MemberSearchKey, List<MemberTeamDto>> entry = it.next();
+            if (matcher.matches(entry.getKey(), entry.getValue())) {
+                it.remove();
+            }
+        }
+    }
+
+    private static boolean containsMember(List<MemberTeamDto> rows, Long memberId) {
+        return contains(rows, row -> Objects.equals(row.getMemberId(), memberId));
+    }
+
+    private static boolean containsTeam(List<MemberTeamDto> rows, Long teamId) {
+        return contains(rows, row -> Objects.equals(row.getTeamId(), teamId));
+    }
+
+    private static boolean contains(List<MemberTeamDto> rows, Predicate<MemberTeamDto> predicate) {
+        for (MemberTeamDto row : rows) {
+            if (predicate.test(row)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //dto 가 가변 객체라서 넣을 때 한 번 복사한다. 꺼내는 쪽은 공유된 목록을 받으므로 고치면 안 된다.
+    private static List<MemberTeamDto> copyOf(List<MemberTeamDto> rows) {
+        List<MemberTeamDto> copy = new ArrayList<>(rows.size());
+        for (MemberTeamDto row : rows) {
+            copy.add(new MemberTeamDto(row.getMemberId(), row.getUsername(), row.getAge(), row.getTeamId(), row.getTeamName()));
+        }
+        return copy;
+    }
+
+    @FunctionalInterface
+    private interface EntryMatcher {
+        boolean matches(MemberSearchKey key, List<MemberTeamDto> rows);
+    }
+}
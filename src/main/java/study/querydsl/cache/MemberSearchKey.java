@@ -0,0 +1,44 @@
+package study.querydsl.cache;
+
+import lombok.Value;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.event.MemberSnapshot;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * 캐시 키로 쓰기 위해 정규화한 검색 조건.
+ * 검색 쿼리가 빈 문자열을 조건 없음으로 보기 때문에 여기서도 null 로 맞춘다.
+ */
+@Value
+public class MemberSearchKey {
+
+    String username;
+    String teamName;
+    Integer ageGoe;
+    Integer ageLoe;
+
+    public static MemberSearchKey of(MemberSearchCondition condition) {
+        return new MemberSearchKey(
+                hasText(condition.getUsername()) ? condition.getUsername() : null,
+                hasText(condition.getTeamName()) ? condition.getTeamName() : null,
+                condition.getAgeGoe(),
+                condition.getAgeLoe());
+    }
+
+    /**
+     * 이 조건의 결과에 회원이 포함될 수 있는지. 스냅샷에는 팀 이름이 없어서 팀 조건은 항상 통과로 본다.
+     */
+    public boolean mayMatch(MemberSnapshot snapshot) {
+        if (snapshot == null) {
+            return false;
+        }
+        if (username != null && !username.equals(snapshot.getUsername())) {
+            return false;
+        }
+        if (ageGoe != null && snapshot.getAge() < ageGoe) {
+            return false;
+        }
+        return ageLoe == null || snapshot.getAge() <= ageLoe;
+    }
+}
@@ -0,0 +1,52 @@
+package study.querydsl.cache;
+
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 회원 검색 결과를 정렬할 수 있는 속성. MemberTeamDto 필드 이름 기준
+ * DB 검색과 메모리 인덱스가 같은 목록을 쓰고, 목록에 없는 속성은 정렬에서 뺀다.
+ */
+public enum MemberSortProperty {
+
+    MEMBER_ID("memberId"),
+    USERNAME("username"),
+    AGE("age"),
+    TEAM_ID("teamId"),
+    TEAM_NAME("teamName");
+
+    private final String property;
+
+    MemberSortProperty(String property) {
+        this.property = property;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * @return 목록에 없는 속성이면 null
+     */
+    public static MemberSortProperty of(String property) {
+        for (MemberSortProperty value : values()) {
+            if (value.property.equals(property)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    //?sort=foo 같은 모르는 속성은 예전처럼 무시한다.
+    public static Sort sortable(Sort sort) {
+        List<Sort.Order> orders = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            if (of(order.getProperty()) != null) {
+                orders.add(order);
+            }
+        }
+        return orders.size() == sort.toList().size() ? sort : Sort.by(orders);
+    }
+}
@@ -0,0 +1,21 @@
+package study.querydsl.cache;
+
+import org.springframework.beans.factory.ObjectProvider;
+import study.querydsl.config.ReplicaDataSourceProperties;
+
+final class ReplicaLag {
+
+    private ReplicaLag() {
+    }
+
+    /**
+     * 레플리카 라우팅을 쓰지 않으면 모든 조회가 primary 로 가므로 0
+     */
+    static long nanos(ObjectProvider<ReplicaDataSourceProperties> replicaProperties) {
+        ReplicaDataSourceProperties properties = replicaProperties.getIfAvailable();
+        if (properties == null || properties.getReplicas().isEmpty()) {
+            return 0;
+        }
+        return properties.getReplicaLag().toNanos();
+    }
+}
@@ -0,0 +1,113 @@
+package study.querydsl.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import study.querydsl.entity.Team;
+import study.querydsl.event.BulkChangedEvent;
+import study.querydsl.event.ChangeType;
+import study.querydsl.event.TeamChangedEvent;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 팀 이름 → id, id → 팀 이름 사전. 팀은 몇 개 안 되고 거의 바뀌지 않아서 통째로 메모리에 올려둔다.
+ * 팀 이름은 유일하지 않으므로 이름 하나에 id 가 여러 개일 수 있다.
+ * 변경은 커밋된 뒤에 반영하므로 쓰기 트랜잭션 안에서는 쓰지 않는다.
+ */
+@Slf4j
+@Component
+public class TeamDictionary {
+
+    private final EntityManagerFactory emf;
+    private final boolean enabled;
+
+    //읽는 쪽은 락 없이 보도록 통째로 바꿔 끼운다.
+    private volatile Snapshot snapshot;
+
+    public TeamDictionary(EntityManagerFactory emf,
+                          @Value("${member.team-dictionary.enabled:true}") boolean enabled) {
+        this.emf = emf;
+        this.enabled = enabled;
+    }
+
+    public boolean isUsable() {
+        return enabled && snapshot != null && TransactionCallbacks.isReadOnlyOrNone();
+    }
+
+    /**
+     * 사전에 없다고 그런 팀이 없는 건 아니다. (다른 노드나 SQL 로 막 만들어진 팀 등)
+     *
+     * @return 사전에 없는 이름이면 null. 호출한 쪽은 팀 이름 조인으로 찾아야 한다.
+     */
+    public Set<Long> idsOf(String teamName) {
+        return snapshot.idsByName.get(teamName);
+    }
+
+    public String nameOf(Long teamId) {
+        return snapshot.nameById.get(teamId);
+    }
+
+    //다른 빈의 초기화(초기 데이터 등)가 끝난 뒤에 읽는다.
+    //onTeamChanged 와 같은 락을 잡아서 늦게 끝난 로딩이 그 사이 반영된 변경을 덮어쓰지 않게 한다.
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        if (!enabled) {
+            return;
+        }
+        EntityManager em = emf.createEntityManager();
+        try {
+            List<Object[]> rows = em.createQuery("select t.id, t.name from Team t", Object[].class).getResultList();
+            Map<Long, String> nameById = new HashMap<>();
+            for (Object[] row : rows) {
+                nameById.put((Long) row[0], (String) row[1]);
+            }
+            snapshot = new Snapshot(nameById);
+            log.info("팀 사전 로딩 teams={}", nameById.size());
+        } finally {
+            em.close();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onTeamChanged(TeamChangedEvent event) {
+        if (snapshot == null) {
+            return;
+        }
+        Map<Long, String> nameById = new HashMap<>(snapshot.nameById);
+        if (event.getType() == ChangeType.DELETE) {
+            nameById.remove(event.getTeamId());
+        } else {
+            nameById.put(event.getTeamId(), event.getAfterName());
+        }
+        snapshot = new Snapshot(nameById);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBulkChanged(BulkChangedEvent event) {
+        if (event.getEntityType() == Team.class) {
+            load();
+        }
+    }
+
+    private static class Snapshot {
+
+        final Map<Long, String> nameById;
+        final Map<String, Set<Long>> idsByName;
+
+        Snapshot(Map<Long, String> nameById) {
+            this.nameById = nameById;
+            this.idsByName = new HashMap<>();
+            nameById.forEach((id, name) -> idsByName.computeIfAbsent(name, n -> new HashSet<>()).add(id));
+        }
+    }
+}
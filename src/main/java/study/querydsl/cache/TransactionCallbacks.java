@@ -0,0 +1,33 @@
+package study.querydsl.cache;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+final class TransactionCallbacks {
+
+    private TransactionCallbacks() {
+    }
+
+    /**
+     * 트랜잭션 안이면 커밋/롤백이 끝난 뒤에 실행한다. 트랜잭션 밖이면 아무것도 하지 않는다.
+     */
+    static void afterCompletion(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                task.run();
+            }
+        });
+    }
+
+    /**
+     * 쓰기 트랜잭션 안에서는 flush 되지 않은 변경을 캐시가 모르므로 캐시를 쓰면 안 된다.
+     */
+    static boolean isReadOnlyOrNone() {
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+}
@@ -0,0 +1,357 @@
+package study.querydsl.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import study.querydsl.entity.Member;
+import study.querydsl.event.BulkChangedEvent;
+import study.querydsl.event.BulkFinishedEvent;
+import study.querydsl.event.BulkStartedEvent;
+import study.querydsl.event.ChangeType;
+import study.querydsl.event.MemberChangedEvent;
+import study.querydsl.event.MemberSnapshot;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * 회원 이름 → id 인덱스와 그 앞단의 블룸 필터. 없는 이름 조회(가입 시 중복 확인 등)를 DB 까지 보내지 않는다.
+ * 블룸 필터가 없다고 하면 바로 빈 결과, 있다고 하면 해시 인덱스에서 id 를 꺼낸다. 블룸 필터는 지울 수 없어서
+ * 지워지거나 이름이 바뀐 회원은 오탐으로 남지만 해시 인덱스가 걸러낸다.
+ * <p>
+ * suggest.enabled 면 자동완성용으로 이름을 정렬해 둔 집합(앞부분 일치)과 3-gram → 이름 색인(중간 일치)도 같이 들고 있다.
+ * 이름 수의 몇 배나 되는 항목이 생기므로 기본은 끄고, 끄면 자동완성은 DB 로 간다.
+ * 변경은 커밋된 뒤에 반영하므로 쓰기 트랜잭션 안에서는 쓰지 않는다.
+ */
+@Slf4j
+@Component
+public class UsernameIndex {
+
+    private static final int MIN_CAPACITY = 1024;
+    private static final int GRAM = 3;
+
+    private final EntityManagerFactory emf;
+    private final boolean enabled;
+    private final boolean suggestEnabled;
+    private final double falsePositiveRate;
+    private final IndexReloader<Snapshot> reloader;
+
+    //읽는 쪽은 락 없이 본다. 다시 읽으면 통째로 바꿔 끼운다.
+    private volatile Snapshot snapshot;
+
+    public UsernameIndex(EntityManagerFactory emf,
+                         @Value("${member.username-index.enabled:true}") boolean enabled,
+                         @Value("${member.username-index.suggest.enabled:false}") boolean suggestEnabled,
+                         @Value("${member.username-index.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.emf = emf;
+        this.enabled = enabled;
+        this.suggestEnabled = suggestEnabled;
+        this.falsePositiveRate = falsePositiveRate;
+        this.reloader = new IndexReloader<>("회원 이름 인덱스", "username-index-reload", true,
+                this::load, fresh -> snapshot = fresh, event -> apply(snapshot, (MemberChangedEvent) event));
+    }
+
+    public boolean isUsable() {
+        return enabled && reloader.isFresh() && TransactionCallbacks.isReadOnlyOrNone();
+    }
+
+    public boolean isSuggestUsable() {
+        return suggestEnabled && isUsable();
+    }
+
+    /**
+     * @return 그런 이름의 회원이 없으면 빈 List
+     */
+    public List<Long> idsOf(String username) {
+        Snapshot current = snapshot;
+        if (username == null || !current.bloomFilter.mightContain(username)) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = current.idsByUsername.get(username);
+        return ids == null ? Collections.emptyList() : ids;
+    }
+
+    /**
+     * keyword 로 시작하는 이름을 사전 순으로 먼저, 모자라면 keyword 를 중간에 포함하는 이름을 사전 순으로 채운다.
+     * 중간 일치는 keyword 가 3 글자 이상일 때만 찾는다.
+     */
+    public List<String> suggest(String keyword, int limit) {
+        Snapshot current = snapshot;
+        List<String> result = new ArrayList<>(limit);
+        for (String username : current.sortedUsernames.subSet(keyword, true, keyword + Character.MAX_VALUE, false)) {
+            if (result.size() == limit) {
+                return result;
+            }
+            result.add(username);
+        }
+        if (keyword.length() < GRAM || result.size() == limit) {
+            return result;
+        }
+
+        //가장 짧은 posting 만 돌면서 실제로 포함하는지 확인한다.
+        Set<String> smallest = null;
+        for (String gram : grams(keyword)) {
+            Set<String> posting = current.usernamesByGram.get(gram);
+            if (posting == null) {
+                return result;
+            }
+            if (smallest == null || posting.size() < smallest.size()) {
+                smallest = posting;
+            }
+        }
+        PriorityQueue<String> top = new PriorityQueue<>(Comparator.reverseOrder());
+        int remaining = limit - result.size();
+        for (String username : smallest) {
+            if (username.startsWith(keyword) || !username.contains(keyword)) {
+                continue;
+            }
+            top.add(username);
+            if (top.size() > remaining) {
+                top.poll();
+            }
+        }
+        List<String> contained = new ArrayList<>(top);
+        Collections.sort(contained);
+        result.addAll(contained);
+        return result;
+    }
+
+    //다른 빈의 초기화(초기 데이터 등)가 끝난 뒤에 읽는다.
+    @EventListener(ApplicationReadyEvent.class)
+    public void reload() {
+        if (enabled) {
+            reloader.reload();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMemberChanged(MemberChangedEvent event) {
+        if (enabled) {
+            reloader.onChanged(event);
+        }
+    }
+
+    @EventListener
+    public void onBulkChanged(BulkChangedEvent event) {
+        if (enabled && event.getEntityType() == Member.class) {
+            reloader.markStale();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION, fallbackExecution = true)
+    public void afterBulkChanged(BulkChangedEvent event) {
+        if (enabled && event.getEntityType() == Member.class) {
+            reloader.afterBulkCompleted();
+        }
+    }
+
+    //여러 트랜잭션에 걸친 벌크 작업은 청크마다가 아니라 끝난 뒤에 한 번만 다시 읽는다.
+    @EventListener
+    public void onBulkStarted(BulkStartedEvent event) {
+        if (enabled && event.getEntityType() == Member.class) {
+            reloader.markStale();
+        }
+    }
+
+    @EventListener
+    public void onBulkFinished(BulkFinishedEvent event) {
+        if (enabled && event.getEntityType() == Member.class) {
+            reloader.afterBulkCompleted();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloader.shutdown();
+    }
+
+    private Snapshot load() {
+        Map<String, List<Long>> idsByUsername = new HashMap<>();
+        EntityManager em = emf.createEntityManager();
+        try (Stream<Object[]> rows = em.createQuery("select m.id, m.username from Member m", Object[].class)
+                .setHint("org.hibernate.fetchSize", 1000)
+                .setHint("org.hibernate.readOnly", true)
+                .getResultStream()) {
+            rows.filter(row -> row[1] != null)
+                    .forEach(row -> idsByUsername.computeIfAbsent((String) row[1], u -> new ArrayList<>(1)).add((Long) row[0]));
+        } finally {
+            em.close();
+        }
+
+        //지금 있는 이름의 두 배까지는 오탐률을 지킨다. 넘으면 다시 읽으면서 키운다.
+        int capacity = Math.max(MIN_CAPACITY, idsByUsername.size() * 2);
+        Snapshot fresh = new Snapshot(new BloomFilter(capacity, falsePositiveRate), capacity, suggestEnabled);
+        idsByUsername.forEach((username, ids) -> {
+            fresh.idsByUsername.put(username, Collections.unmodifiableList(ids));
+            fresh.bloomFilter.put(username);
+            fresh.addName(username);
+        });
+        log.info("회원 이름 인덱스 로딩 usernames={} bloomBits={}", idsByUsername.size(), fresh.bloomFilter.bitSize());
+        return fresh;
+    }
+
+    //이름별 id 목록은 바꾸지 않고 새로 만들어 끼우므로 읽는 쪽이 도중의 상태를 보지 않는다.
+    private void apply(Snapshot target, MemberChangedEvent event) {
+        Long memberId = event.getMemberId();
+        MemberSnapshot before = event.getBefore();
+        MemberSnapshot after = event.getType() == ChangeType.DELETE ? null : event.getAfter();
+        //나이/팀만 바뀐 경우는 이름 쪽을 건드리지 않는다.
+        boolean renamedOrDeleted = after == null || after.getUsername() == null
+                || before != null && !after.getUsername().equals(before.getUsername());
+        if (before != null && before.getUsername() != null && renamedOrDeleted) {
+            List<Long> remaining = target.idsByUsername.computeIfPresent(before.getUsername(), (username, ids) -> {
+                List<Long> rest = new ArrayList<>(ids);
+                rest.remove(memberId);
+                return rest.isEmpty() ? null : Collections.unmodifiableList(rest);
+            });
+            if (remaining == null) {
+                target.removeName(before.getUsername());
+            }
+        }
+        if (after != null && after.getUsername() != null) {
+            target.addName(after.getUsername());
+            target.idsByUsername.compute(after.getUsername(), (username, ids) -> {
+                if (ids != null && ids.contains(memberId)) {
+                    return ids;
+                }
+                List<Long> added = ids == null ? new ArrayList<>(1) : new ArrayList<>(ids);
+                added.add(memberId);
+                return Collections.unmodifiableList(added);
+            });
+            //id 목록보다 먼저 보이면 해시 인덱스에서 못 찾고 빈 결과가 나올 뿐이라 순서는 상관없다.
+            target.bloomFilter.put(after.getUsername());
+        }
+        if (target.idsByUsername.size() > target.capacity) {
+            reloader.queueReload();
+        }
+    }
+
+    private static class Snapshot {
+
+        final BloomFilter bloomFilter;
+        final int capacity;
+        final Map<String, List<Long>> idsByUsername = new ConcurrentHashMap<>();
+        //자동완성을 끄면 null
+        final NavigableSet<String> sortedUsernames;
+        final Map<String, Set<String>> usernamesByGram;
+
+        Snapshot(BloomFilter bloomFilter, int capacity, boolean suggest) {
+            this.bloomFilter = bloomFilter;
+            this.capacity = capacity;
+            this.sortedUsernames = suggest ? new ConcurrentSkipListSet<>() : null;
+            this.usernamesByGram = suggest ? new ConcurrentHashMap<>() : null;
+        }
+
+        void addName(String username) {
+            if (sortedUsernames != null && sortedUsernames.add(username)) {
+                for (String gram : grams(username)) {
+                    usernamesByGram.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(username);
+                }
+            }
+        }
+
+        void removeName(String username) {
+            if (sortedUsernames != null && sortedUsernames.remove(username)) {
+                for (String gram : grams(username)) {
+                    usernamesByGram.computeIfPresent(gram, (g, usernames) -> {
+                        usernames.remove(username);
+                        return usernames.isEmpty() ? null : usernames;
+                    });
+                }
+            }
+        }
+    }
+
+    private static Set<String> grams(String value) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= value.length(); i++) {
+            grams.add(value.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+
+    /**
+     * 64 비트 해시 하나를 둘로 나눠 k 개의 위치를 만든다. (Kirsch-Mitzenmacher)
+     */
+    static class BloomFilter {
+
+        private final AtomicLongArray words;
+        private final long bitSize;
+        private final int hashCount;
+
+        BloomFilter(int expectedInsertions, double falsePositiveRate) {
+            double ln2 = Math.log(2);
+            long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2));
+            this.words = new AtomicLongArray(Math.toIntExact((bits + 63) / 64));
+            this.bitSize = words.length() * 64L;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * ln2));
+        }
+
+        void put(String value) {
+            long hash = hash(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long bit = index(h1 + i * h2);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long current;
+                while (((current = words.get(word)) & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                    //다른 스레드가 같은 word 를 고쳤으면 다시 시도
+                }
+            }
+        }
+
+        boolean mightContain(String value) {
+            long hash = hash(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long bit = index(h1 + i * h2);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long bitSize() {
+            return bitSize;
+        }
+
+        private long index(int combined) {
+            return (combined < 0 ? ~combined : combined) % bitSize;
+        }
+
+        //FNV-1a 뒤에 splitmix64 로 섞는다. 상위/하위 32 비트를 따로 쓰므로 고르게 퍼져야 한다.
+        private static long hash(String value) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+            hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+            return hash ^ (hash >>> 31);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package study.querydsl.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * member.datasource.replicas 가 설정되어 있으면 spring.datasource 는 쓰기용 primary 로 두고
+ * 읽기 전용 트랜잭션은 레플리카로 보낸다. 설정이 없으면 스프링 부트 기본 데이터소스를 그대로 쓴다.
+ * 풀 설정은 모두 spring.datasource.hikari 를 따르고, 레플리카는 member.datasource.replicas[n].hikari 로 덮어쓸 수 있다.
+ */
+@Configuration
+@EnableConfigurationProperties(ReplicaDataSourceProperties.class)
+@ConditionalOnProperty(prefix = "member.datasource", name = "replicas[0].url")
+public class DataSourceConfig {
+
+    private static final String HIKARI = "spring.datasource.hikari";
+
+    @Bean
+    public DataSource replicationRoutingDataSource(DataSourceProperties primaryProperties,
+                                                   ReplicaDataSourceProperties replicaProperties,
+                                                   Environment environment) {
+        List<DataSourceProperties> replicas = replicaProperties.getReplicas();
+        Binder binder = Binder.get(environment);
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(ReplicationRoutingDataSource.PRIMARY, build(binder, primaryProperties, "primary", HIKARI));
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(ReplicationRoutingDataSource.REPLICA_PREFIX + i, build(binder, replicas.get(i), "replica-" + i,
+                    HIKARI, "member.datasource.replicas[" + i + "].hikari"));
+        }
+
+        ReplicationRoutingDataSource routing = new ReplicationRoutingDataSource(replicas.size());
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(targets.get(ReplicationRoutingDataSource.PRIMARY));
+        return routing;
+    }
+
+    /**
+     * 실제 커넥션은 첫 쿼리 때 가져온다. 그때는 트랜잭션의 readOnly 여부가 정해져 있다.
+     * p6spy 는 getConnection 에서 메타데이터를 읽어 커넥션을 바로 잡아버리므로 이 빈은 decorator 대상에서 뺀다. (application.yml)
+     */
+    @Bean
+    @Primary
+    public DataSource lazyDataSource(@Qualifier("replicationRoutingDataSource") DataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    //기본 데이터소스 자동 설정처럼 hikari 설정을 풀에 바인딩한다. 뒤의 prefix 가 앞의 값을 덮어쓴다.
+    private static HikariDataSource build(Binder binder, DataSourceProperties properties, String poolName, String... hikariPrefixes) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        for (String prefix : hikariPrefixes) {
+            binder.bind(prefix, Bindable.ofInstance(dataSource));
+        }
+        dataSource.setPoolName(poolName);
+        return dataSource;
+    }
+}
@@ -0,0 +1,21 @@
+package study.querydsl.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter @Setter
+@ConfigurationProperties(prefix = "member.datasource")
+public class ReplicaDataSourceProperties {
+
+    //spring.datasource 와 같은 형식(url, username, password, driver-class-name). 풀 설정은 replicas[n].hikari
+    private List<DataSourceProperties> replicas = new ArrayList<>();
+
+    //레플리카가 primary 를 따라오는 데 걸리는 시간. 무효화 후 이 시간 동안은 조회 결과를 캐시에 넣지 않는다.
+    private Duration replicaLag = Duration.ofSeconds(1);
+}
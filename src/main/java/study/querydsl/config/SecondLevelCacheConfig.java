@@ -0,0 +1,41 @@
+package study.querydsl.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+
+/**
+ * Team 엔티티용 하이버네이트 2차 캐시. JCache 위에 Ehcache 를 임베디드로 띄운다.
+ * 지연 로딩된 member.team 은 팀 id 로 찾으므로 엔티티 리전만으로 DB 조회가 사라진다.
+ */
+@Configuration
+public class SecondLevelCacheConfig implements HibernatePropertiesCustomizer {
+
+    private final boolean enabled;
+    private final boolean statistics;
+
+    public SecondLevelCacheConfig(@Value("${member.second-level-cache.enabled:true}") boolean enabled,
+                                  @Value("${member.second-level-cache.statistics:true}") boolean statistics) {
+        this.enabled = enabled;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put("hibernate.cache.use_second_level_cache", enabled);
+        if (!enabled) {
+            return;
+        }
+        hibernateProperties.put("hibernate.cache.region.factory_class", "jcache");
+        hibernateProperties.put("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider");
+        hibernateProperties.put("hibernate.javax.cache.uri", "ehcache.xml");
+        //ehcache.xml 에 없는 리전은 띄우지 않는다. 크기 제한 없는 캐시가 생기는 걸 막는다.
+        hibernateProperties.put("hibernate.javax.cache.missing_cache_strategy", "fail");
+        //리전별 hit/miss 를 보려면 통계가 켜져 있어야 한다.
+        hibernateProperties.put("hibernate.generate_statistics", statistics);
+        //통계를 켜면 세션마다 INFO 로그를 남기므로 그건 끈다.
+        hibernateProperties.put("hibernate.session.events.log", false);
+    }
+}
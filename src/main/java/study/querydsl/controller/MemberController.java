@@ -2,13 +2,31 @@ package study.querydsl.controller;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import study.querydsl.advisor.IndexAdvisor;
+import study.querydsl.cache.CacheRegionStats;
+import study.querydsl.cache.CacheStats;
+import study.querydsl.cache.MemberCountCache;
+import study.querydsl.cache.MemberSearchCache;
+import study.querydsl.cache.SecondLevelCacheStats;
+import study.querydsl.dto.IndexRecommendation;
+import study.querydsl.dto.MemberCursorPage;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.repository.MemberCursor;
 import study.querydsl.repository.MemberJpaRepository;
 import study.querydsl.repository.MemberRepository;
+import study.querydsl.service.MemberExportService;
+import study.querydsl.stats.TeamStatsStore;
 
 import java.util.List;
 
@@ -16,21 +34,104 @@ import java.util.List;
 @RequiredArgsConstructor
 public class MemberController {
 
+    private static final int MAX_CURSOR_PAGE_SIZE = 2000;
+    private static final int MAX_SUGGEST_SIZE = 50;
+
     private final MemberJpaRepository memberJpaRepository;
     private final MemberRepository memberRepository;
+    private final MemberExportService memberExportService;
+    private final MemberSearchCache memberSearchCache;
+    private final MemberCountCache memberCountCache;
+    private final SecondLevelCacheStats secondLevelCacheStats;
+    private final TeamStatsStore teamStatsStore;
+    private final IndexAdvisor indexAdvisor;
+
+    @Value("${member.paging.count-limit:10000}")
+    private long countLimit;
 
     @GetMapping("/v1/members")
     public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition) {
         return memberJpaRepository.search(condition);
     }
 
+    //결과를 메모리에 모으지 않고 NDJSON 으로 흘려보낸다.
+    @GetMapping(value = "/v1/members/export", produces = "application/x-ndjson")
+    public StreamingResponseBody exportMemberV1(MemberSearchCondition condition) {
+        return out -> memberExportService.export(condition, out);
+    }
+
     @GetMapping("/v2/members")
     public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable) {
         return memberRepository.searchPageSimple(condition, pageable);
     }
 
+    //estimatedTotal=true 면 전체 건수를 count-limit 까지만 센다. 응답의 totalApproximate 로 구분한다.
+    //parallel=true 면 컨텐츠와 count 쿼리를 동시에 실행한다.
     @GetMapping("/v3/members")
-    public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable) {
+    public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable,
+                                              @RequestParam(defaultValue = "false") boolean estimatedTotal,
+                                              @RequestParam(defaultValue = "false") boolean parallel) {
+        if (estimatedTotal) {
+            return memberRepository.searchPageEstimated(condition, pageable, countLimit);
+        }
+        if (parallel) {
+            return memberRepository.searchPageParallel(condition, pageable);
+        }
         return memberRepository.searchPageComplex(condition, pageable);
     }
+
+    @GetMapping("/v4/members")
+    public MemberCursorPage searchMemberV4(MemberSearchCondition condition,
+                                           @RequestParam(required = false) String cursor,
+                                           @RequestParam(defaultValue = "20") int size) {
+        int pageSize = Math.min(Math.max(size, 1), MAX_CURSOR_PAGE_SIZE);
+        //손으로 고친 커서는 서버 오류가 아니라 잘못된 요청이다.
+        try {
+            MemberCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        return memberRepository.searchByCursor(condition, cursor, pageSize);
+    }
+
+    //다음 페이지 버튼만 필요한 화면용. count 쿼리를 날리지 않는다.
+    @GetMapping("/v5/members")
+    public Slice<MemberTeamDto> searchMemberV5(MemberSearchCondition condition, Pageable pageable) {
+        return memberRepository.searchSlice(condition, pageable);
+    }
+
+    //입력할 때마다 부르는 자동완성. DB 를 거치지 않고 메모리 이름 인덱스에서 답한다.
+    @GetMapping("/v1/members/suggest")
+    public List<String> suggestUsernames(@RequestParam String keyword,
+                                         @RequestParam(defaultValue = "10") int size) {
+        return memberRepository.suggestUsernames(keyword, Math.min(Math.max(size, 1), MAX_SUGGEST_SIZE));
+    }
+
+    @GetMapping("/v1/members/cache-stats")
+    public CacheStats searchCacheStats() {
+        return memberSearchCache.stats();
+    }
+
+    @GetMapping("/v3/members/count-cache-stats")
+    public CacheStats countCacheStats() {
+        return memberCountCache.stats();
+    }
+
+    //팀별 회원 수, 나이 합/평균/최소/최대. 회원 테이블을 읽지 않고 미리 집계해 둔 값을 준다.
+    @GetMapping("/v1/teams/stats")
+    public List<TeamStatsDto> teamStats() {
+        return teamStatsStore.stats();
+    }
+
+    //지금까지 DB 로 간 검색 모양을 보고 만든 인덱스 DDL. 시간을 많이 쓴 순서
+    @GetMapping("/v1/members/index-advice")
+    public List<IndexRecommendation> indexAdvice(@RequestParam(defaultValue = "5") int size) {
+        return indexAdvisor.recommend(size);
+    }
+
+    //Team 2차 캐시 리전별 hit ratio
+    @GetMapping("/v1/teams/cache-stats")
+    public List<CacheRegionStats> teamCacheStats() {
+        return secondLevelCacheStats.regions();
+    }
 }
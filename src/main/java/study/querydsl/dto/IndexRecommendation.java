@@ -0,0 +1,15 @@
+package study.querydsl.dto;
+
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class IndexRecommendation {
+    String table;
+    List<String> columns;
+    //이 인덱스로 도움을 받을 검색 횟수와 그 검색들이 DB 에서 쓴 시간 합
+    long queryCount;
+    double totalMillis;
+    String ddl;
+}
@@ -0,0 +1,16 @@
+package study.querydsl.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class MemberCursorPage {
+
+    private List<MemberTeamDto> content;
+    //다음 페이지를 요청할 때 그대로 넘겨주면 된다. 마지막 페이지면 null
+    private String nextCursor;
+    private boolean hasNext;
+}
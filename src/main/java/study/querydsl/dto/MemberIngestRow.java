@@ -0,0 +1,11 @@
+package study.querydsl.dto;
+
+import lombok.Value;
+
+//대량 저장 입력 한 줄. 팀은 이름으로 찾고 없으면 만든다.
+@Value
+public class MemberIngestRow {
+    String username;
+    int age;
+    String teamName;
+}
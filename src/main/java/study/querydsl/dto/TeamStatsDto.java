@@ -0,0 +1,18 @@
+package study.querydsl.dto;
+
+import lombok.Value;
+
+@Value
+public class TeamStatsDto {
+    Long teamId;
+    String teamName;
+    long memberCount;
+    long ageSum;
+    //회원이 없으면 null
+    Integer minAge;
+    Integer maxAge;
+
+    public Double getAvgAge() {
+        return memberCount == 0 ? null : (double) ageSum / memberCount;
+    }
+}
@@ -3,7 +3,10 @@ package study.querydsl.dto;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import study.querydsl.projection.GenerateProjection;
 
+//리플렉션 없는 XxxProjection 생성 (projection-processor)
+@GenerateProjection
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
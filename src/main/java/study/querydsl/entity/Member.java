@@ -1,6 +1,8 @@
 package study.querydsl.entity;
 
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 
@@ -10,9 +12,17 @@ import javax.persistence.*;
 @AllArgsConstructor
 @Builder
 @ToString(of = {"id", "username", "age"})
+@Table(indexes = @Index(name = "idx_member_username", columnList = "username"))
 public class Member {
 
-    @Id @GeneratedValue
+    //시퀀스를 100 개씩 한 번에 받아 와서(pooled-lo) 메모리에서 나눠 쓴다. 대량 저장 시 row 마다 시퀀스를 부르지 않는다.
+    @Id
+    @GeneratedValue(generator = "member_seq")
+    @GenericGenerator(name = "member_seq", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "member_seq"),
+            @Parameter(name = "increment_size", value = "100"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     @Column(name = "member_id")
     private Long id;
     private String username;
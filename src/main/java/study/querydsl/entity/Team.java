@@ -1,6 +1,10 @@
 package study.querydsl.entity;
 
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.ArrayList;
@@ -11,14 +15,23 @@ import java.util.List;
 @AllArgsConstructor
 @Entity
 @Builder
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE) //거의 안 바뀌므로 2차 캐시에 둔다. (ehcache.xml)
 public class Team {
 
-    @Id @GeneratedValue
+    //Member 와 같이 pooled-lo. 팀은 적으므로 50 개씩
+    @Id
+    @GeneratedValue(generator = "team_seq")
+    @GenericGenerator(name = "team_seq", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "team_seq"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     @Column(name = "team_id")
     private Long id;
 
     private String name;
 
+    //Member 는 자주, 벌크로 바뀌어서 캐시하지 않는다. 컬렉션만 캐시하면 회원을 한 명씩 다시 읽어서 fetch join 보다 느리다.
     @OneToMany(mappedBy = "team")
     private List<Member> members = new ArrayList<>();
 
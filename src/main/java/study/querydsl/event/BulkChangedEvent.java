@@ -0,0 +1,13 @@
+package study.querydsl.event;
+
+import lombok.Value;
+
+/**
+ * 벌크 update/delete/insert 가 실행되었을 때 발행된다.
+ * 어떤 row 가 바뀌었는지는 알 수 없으므로 받는 쪽은 해당 엔티티 전체가 바뀌었다고 보고 처리해야 한다.
+ */
+@Value
+public class BulkChangedEvent {
+    Class<?> entityType;
+    long affectedRows;
+}
@@ -0,0 +1,12 @@
+package study.querydsl.event;
+
+import lombok.Value;
+
+/**
+ * {@link BulkStartedEvent} 로 시작한 벌크 작업이 끝났을 때 트랜잭션 밖에서 발행된다.
+ */
+@Value
+public class BulkFinishedEvent {
+    Class<?> entityType;
+    long affectedRows;
+}
@@ -0,0 +1,12 @@
+package study.querydsl.event;
+
+import lombok.Value;
+
+/**
+ * 여러 트랜잭션에 걸친 벌크 작업이 시작될 때 발행된다. 끝나면 실패하더라도 {@link BulkFinishedEvent} 가 반드시 뒤따른다.
+ * 그 사이에 커밋되는 청크는 따로 이벤트를 내지 않으므로 받는 쪽은 끝날 때까지 해당 엔티티 전체가 바뀌는 중이라고 보고 처리해야 한다.
+ */
+@Value
+public class BulkStartedEvent {
+    Class<?> entityType;
+}
@@ -0,0 +1,141 @@
+package study.querydsl.event;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.internal.SessionFactoryImpl;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.function.Supplier;
+
+/**
+ * 하이버네이트 post insert/update/delete 이벤트를 받아서 스프링 이벤트로 다시 발행한다.
+ * 캐시나 메모리 인덱스는 하이버네이트에 직접 붙지 않고 {@link MemberChangedEvent}, {@link TeamChangedEvent} 를 구독하면 된다.
+ */
+@Component
+@RequiredArgsConstructor
+public class EntityChangeListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    //대량 저장 중에는 row 단위 이벤트를 내보내지 않는다. 호출한 쪽이 BulkChangedEvent 를 대신 발행한다.
+    private static final ThreadLocal<Boolean> rowEventsSuppressed = ThreadLocal.withInitial(() -> false);
+
+    private final EntityManagerFactory emf;
+    private final ApplicationEventPublisher publisher;
+
+    /**
+     * 현재 스레드에서 work 를 실행하는 동안 row 단위 이벤트를 끈다.
+     * 끝난 뒤 변경 범위에 맞는 {@link BulkChangedEvent} 는 호출한 쪽이 발행해야 한다.
+     */
+    public static <T> T withoutRowEvents(Supplier<T> work) {
+        boolean previous = rowEventsSuppressed.get();
+        rowEventsSuppressed.set(true);
+        try {
+            return work.get();
+        } finally {
+            rowEventsSuppressed.set(previous);
+        }
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImpl.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (rowEventsSuppressed.get()) {
+            return;
+        }
+        Object entity = event.getEntity();
+        if (entity instanceof Member) {
+            Member member = (Member) entity;
+            publisher.publishEvent(new MemberChangedEvent(ChangeType.INSERT, member.getId(), null, snapshot(member)));
+        } else if (entity instanceof Team) {
+            Team team = (Team) entity;
+            publisher.publishEvent(new TeamChangedEvent(ChangeType.INSERT, team.getId(), null, team.getName()));
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (rowEventsSuppressed.get()) {
+            return;
+        }
+        Object entity = event.getEntity();
+        Object[] oldState = event.getOldState();
+        EntityPersister persister = event.getPersister();
+        if (entity instanceof Member) {
+            Member member = (Member) entity;
+            MemberSnapshot before = oldState == null ? null : new MemberSnapshot(
+                    (String) oldState[propertyIndex(persister, "username")],
+                    (Integer) oldState[propertyIndex(persister, "age")],
+                    teamId((Team) oldState[propertyIndex(persister, "team")]));
+            publisher.publishEvent(new MemberChangedEvent(ChangeType.UPDATE, member.getId(), before, snapshot(member)));
+        } else if (entity instanceof Team) {
+            Team team = (Team) entity;
+            String beforeName = oldState == null ? null : (String) oldState[propertyIndex(persister, "name")];
+            publisher.publishEvent(new TeamChangedEvent(ChangeType.UPDATE, team.getId(), beforeName, team.getName()));
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (rowEventsSuppressed.get()) {
+            return;
+        }
+        Object entity = event.getEntity();
+        if (entity instanceof Member) {
+            Member member = (Member) entity;
+            publisher.publishEvent(new MemberChangedEvent(ChangeType.DELETE, member.getId(), snapshot(member), null));
+        } else if (entity instanceof Team) {
+            Team team = (Team) entity;
+            publisher.publishEvent(new TeamChangedEvent(ChangeType.DELETE, team.getId(), team.getName(), null));
+        }
+    }
+
+    //PostCommit*EventListener 가 아니면 deprecated 메서드를 직접 구현해야 한다.
+    @Override
+    @SuppressWarnings("deprecation")
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private MemberSnapshot snapshot(Member member) {
+        return new MemberSnapshot(member.getUsername(), member.getAge(), teamId(member.getTeam()));
+    }
+
+    //프록시를 초기화하지 않고 id 만 꺼낸다.
+    private Long teamId(Team team) {
+        if (team == null) {
+            return null;
+        }
+        if (team instanceof HibernateProxy) {
+            return (Long) ((HibernateProxy) team).getHibernateLazyInitializer().getIdentifier();
+        }
+        return team.getId();
+    }
+
+    private int propertyIndex(EntityPersister persister, String propertyName) {
+        return persister.getEntityMetamodel().getPropertyIndex(propertyName);
+    }
+}
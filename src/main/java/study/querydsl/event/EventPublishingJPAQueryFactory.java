@@ -0,0 +1,61 @@
+package study.querydsl.event;
+
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.jpa.impl.JPADeleteClause;
+import com.querydsl.jpa.impl.JPAInsertClause;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUpdateClause;
+import org.springframework.context.ApplicationEventPublisher;
+
+import javax.persistence.EntityManager;
+
+/**
+ * 벌크 연산은 영속성 컨텍스트를 거치지 않아서 하이버네이트 엔티티 이벤트가 나가지 않는다.
+ * 대신 실행 직후 {@link BulkChangedEvent} 를 발행해서 캐시와 인덱스가 알 수 있게 한다.
+ */
+public class EventPublishingJPAQueryFactory extends JPAQueryFactory {
+
+    private final EntityManager em;
+    private final ApplicationEventPublisher publisher;
+
+    public EventPublishingJPAQueryFactory(EntityManager em, ApplicationEventPublisher publisher) {
+        super(em);
+        this.em = em;
+        this.publisher = publisher;
+    }
+
+    @Override
+    public JPAUpdateClause update(EntityPath<?> path) {
+        return new JPAUpdateClause(em, path) {
+            @Override
+            public long execute() {
+                return published(path, super.execute());
+            }
+        };
+    }
+
+    @Override
+    public JPADeleteClause delete(EntityPath<?> path) {
+        return new JPADeleteClause(em, path) {
+            @Override
+            public long execute() {
+                return published(path, super.execute());
+            }
+        };
+    }
+
+    @Override
+    public JPAInsertClause insert(EntityPath<?> path) {
+        return new JPAInsertClause(em, path) {
+            @Override
+            public long execute() {
+                return published(path, super.execute());
+            }
+        };
+    }
+
+    private long published(EntityPath<?> path, long affectedRows) {
+        publisher.publishEvent(new BulkChangedEvent(path.getType(), affectedRows));
+        return affectedRows;
+    }
+}
@@ -0,0 +1,16 @@
+package study.querydsl.event;
+
+import lombok.Value;
+
+/**
+ * 회원 한 건이 insert/update/delete 되었을 때 flush 시점에 발행된다.
+ * before 는 insert 일 때, after 는 delete 일 때 null 이다.
+ * update 라도 하이버네이트가 이전 상태를 모르면(준영속 update) before 가 null 일 수 있다.
+ */
+@Value
+public class MemberChangedEvent {
+    ChangeType type;
+    Long memberId;
+    MemberSnapshot before;
+    MemberSnapshot after;
+}
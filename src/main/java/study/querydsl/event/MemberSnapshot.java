@@ -0,0 +1,13 @@
+package study.querydsl.event;
+
+import lombok.Value;
+
+/**
+ * 변경 이벤트에 실어 보내는 회원 한 건의 값. 엔티티를 그대로 넘기면 리스너가 지연 로딩을 건드릴 수 있어서 값만 복사한다.
+ */
+@Value
+public class MemberSnapshot {
+    String username;
+    int age;
+    Long teamId;
+}
@@ -0,0 +1,14 @@
+package study.querydsl.event;
+
+import lombok.Value;
+
+/**
+ * 팀 한 건이 insert/update/delete 되었을 때 flush 시점에 발행된다.
+ */
+@Value
+public class TeamChangedEvent {
+    ChangeType type;
+    Long teamId;
+    String beforeName;
+    String afterName;
+}
@@ -1,43 +1,61 @@
 package study.querydsl.init;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
-import study.querydsl.entity.Member;
-import study.querydsl.entity.Team;
 
 import javax.annotation.PostConstruct;
-import javax.persistence.EntityManager;
-import javax.persistence.PersistenceContext;
+import java.util.Locale;
 
-@Profile("local")
+//local 은 기본 100 명, 스테이징/벤치마크는 seed 프로필과 member.seed.* 로 크기를 정한다.
+@Profile({"local", "seed"})
 @Component
 @RequiredArgsConstructor
 public class InitializeMember {
 
-    private final InitMemberService initMemberService;
+    private final MemberDataGenerator memberDataGenerator;
+
+    @Value("${member.seed.seed:42}")
+    private long seed;
+    @Value("${member.seed.teams:2}")
+    private int teams;
+    @Value("${member.seed.members:100}")
+    private long members;
+    @Value("${member.seed.team-skew:0}")
+    private double teamSkew;
+    @Value("${member.seed.age.distribution:uniform}")
+    private String ageDistribution;
+    @Value("${member.seed.age.min:0}")
+    private int ageMin;
+    @Value("${member.seed.age.max:99}")
+    private int ageMax;
+    @Value("${member.seed.age.stddev:15}")
+    private double ageStddev;
+    @Value("${member.seed.username.cardinality:0}")
+    private long usernameCardinality;
+    @Value("${member.seed.username.skew:0}")
+    private double usernameSkew;
+    @Value("${member.seed.threads:4}")
+    private int threads;
+    @Value("${member.seed.batch-size:1000}")
+    private int batchSize;
 
     @PostConstruct
     public void init() {
-        initMemberService.init();
-    }
-
-    @Component
-    static class InitMemberService {
-        @PersistenceContext
-        EntityManager em;
-
-        @Transactional
-        public void init() {
-            Team teamA = new Team("teamA");
-            Team teamB = new Team("teamB");
-            em.persist(teamA);
-            em.persist(teamB);
-            for (int i = 0; i < 100; i++) {
-                Team selectedTeam = i % 2 == 0 ? teamA : teamB;
-                em.persist(new Member("member" + i, i, selectedTeam));
-            }
-        }
+        memberDataGenerator.generate(MemberDataSpec.builder()
+                .seed(seed)
+                .teams(teams)
+                .members(members)
+                .teamSkew(teamSkew)
+                .ageDistribution(MemberDataSpec.AgeDistribution.valueOf(ageDistribution.toUpperCase(Locale.ROOT)))
+                .ageMin(ageMin)
+                .ageMax(ageMax)
+                .ageStddev(ageStddev)
+                .usernameCardinality(usernameCardinality)
+                .usernameSkew(usernameSkew)
+                .threads(threads)
+                .batchSize(batchSize)
+                .build());
     }
 }
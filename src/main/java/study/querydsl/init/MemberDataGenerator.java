@@ -0,0 +1,269 @@
+package study.querydsl.init;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.event.BulkChangedEvent;
+
+import javax.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link MemberDataSpec} 대로 팀과 회원을 JDBC 배치 insert 로 만든다.
+ * 회원은 batch-size 건씩 잘라서 threads 개 스레드가 청크마다 트랜잭션을 열어 넣는다.
+ * <p>
+ * i 번째 회원의 값은 seed 와 i 로만 정해지고 id 는 호출한 스레드에서 시퀀스 순서대로 미리 받아 두므로
+ * 빈 DB 에 같은 spec 으로 만들면 id 까지 같은 데이터가 된다.
+ * 엔티티를 거치지 않으므로 끝나면 BulkChangedEvent 를 발행해서 메모리 인덱스가 다시 읽게 한다.
+ */
+@Slf4j
+@Component
+public class MemberDataGenerator {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final EntityManager em;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+    private final ApplicationEventPublisher publisher;
+
+    public MemberDataGenerator(EntityManager em,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               ApplicationEventPublisher publisher) {
+        this.em = em;
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.publisher = publisher;
+    }
+
+    /**
+     * @return 만든 회원 수
+     */
+    public long generate(MemberDataSpec spec) {
+        validate(spec);
+        long started = System.nanoTime();
+
+        long[] teamIds = insertTeams(spec);
+        publisher.publishEvent(new BulkChangedEvent(Team.class, teamIds.length));
+
+        AtomicLong inserted = new AtomicLong();
+        try {
+            insertMembers(spec, teamIds, inserted);
+        } finally {
+            //실패해도 이미 커밋된 청크가 있으므로 알린다.
+            if (inserted.get() > 0) {
+                publisher.publishEvent(new BulkChangedEvent(Member.class, inserted.get()));
+            }
+        }
+        log.info("generated {} teams, {} members in {}ms (seed={})", teamIds.length, inserted.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), spec.getSeed());
+        return inserted.get();
+    }
+
+    private long[] insertTeams(MemberDataSpec spec) {
+        long[] teamIds = new long[spec.getTeams()];
+        for (int from = 0; from < teamIds.length; from += spec.getBatchSize()) {
+            int first = from;
+            long[] ids = nextIds(Team.class, Math.min(spec.getBatchSize(), teamIds.length - from));
+            System.arraycopy(ids, 0, teamIds, first, ids.length);
+            tx.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                    "insert into team (team_id, name) values (?, ?)", new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            ps.setLong(1, ids[i]);
+                            ps.setString(2, spec.getTeamPrefix() + (first + i));
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return ids.length;
+                        }
+                    }));
+        }
+        return teamIds;
+    }
+
+    private void insertMembers(MemberDataSpec spec, long[] teamIds, AtomicLong inserted) {
+        RowSampler sampler = new RowSampler(spec);
+        int threads = spec.getThreads();
+        AtomicInteger sequence = new AtomicInteger();
+        //큐가 차면 호출한 스레드가 직접 넣으므로 id 를 미리 받아 둔 청크가 쌓이지 않는다.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads), runnable -> {
+                    Thread thread = new Thread(runnable, "member-data-generator-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        List<Future<?>> running = new ArrayList<>();
+        try {
+            for (long from = 0; from < spec.getMembers(); from += spec.getBatchSize()) {
+                long first = from;
+                long[] ids = nextIds(Member.class, (int) Math.min(spec.getBatchSize(), spec.getMembers() - from));
+                running.add(executor.submit(() -> {
+                    insertMemberChunk(first, ids, teamIds, sampler);
+                    inserted.addAndGet(ids.length);
+                }));
+                awaitDone(running, false);
+            }
+            awaitDone(running, true);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void insertMemberChunk(long first, long[] ids, long[] teamIds, RowSampler sampler) {
+        tx.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                "insert into member (member_id, username, age, team_id) values (?, ?, ?, ?)", new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        long row = first + i;
+                        SplittableRandom random = sampler.random(row);
+                        //뽑는 순서가 바뀌면 같은 seed 로 다른 데이터가 나온다. 팀, 이름, 나이 순
+                        int team = sampler.team(row, random);
+                        String username = sampler.username(row, random);
+                        int age = sampler.age(random);
+                        ps.setLong(1, ids[i]);
+                        ps.setString(2, username);
+                        ps.setInt(3, age);
+                        ps.setLong(4, teamIds[team]);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return ids.length;
+                    }
+                }));
+    }
+
+    //끝난 청크를 치우면서 실패가 있으면 바로 던진다. all 이면 남은 청크를 다 기다린다.
+    private void awaitDone(List<Future<?>> running, boolean all) {
+        Iterator<Future<?>> iterator = running.iterator();
+        while (iterator.hasNext()) {
+            Future<?> future = iterator.next();
+            if (!all && !future.isDone()) {
+                continue;
+            }
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("데이터 생성이 중단되었습니다.", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+            iterator.remove();
+        }
+    }
+
+    //하이버네이트와 같은 시퀀스(pooled-lo)에서 받으므로 이후 JPA 로 저장하는 엔티티와 id 가 겹치지 않는다.
+    private long[] nextIds(Class<?> entityType, int count) {
+        return tx.execute(status -> {
+            SessionImplementor session = em.unwrap(SessionImplementor.class);
+            IdentifierGenerator generator = session.getFactory().getMetamodel().entityPersister(entityType).getIdentifierGenerator();
+            long[] ids = new long[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = ((Number) generator.generate(session, null)).longValue();
+            }
+            return ids;
+        });
+    }
+
+    private static void validate(MemberDataSpec spec) {
+        if (spec.getTeams() < 1 || spec.getMembers() < 0) {
+            throw new IllegalArgumentException("팀은 1 개 이상, 회원은 0 명 이상이어야 합니다.");
+        }
+        if (spec.getAgeMin() > spec.getAgeMax()) {
+            throw new IllegalArgumentException("ageMin 이 ageMax 보다 큽니다.");
+        }
+        if (spec.getUsernameCardinality() < 0 || spec.getTeamSkew() < 0 || spec.getUsernameSkew() < 0) {
+            throw new IllegalArgumentException("username-cardinality, skew 는 음수일 수 없습니다.");
+        }
+        if (spec.getThreads() < 1 || spec.getBatchSize() < 1) {
+            throw new IllegalArgumentException("threads, batch-size 는 1 이상이어야 합니다.");
+        }
+    }
+
+    /**
+     * 회원 한 명의 팀, 이름, 나이를 뽑는다. row 마다 seed 에서 섞어 낸 난수열을 따로 쓰므로 어느 스레드에서 뽑든 같다.
+     */
+    private static class RowSampler {
+
+        private final MemberDataSpec spec;
+        private final ZipfSampler teamSampler;
+        private final ZipfSampler usernameSampler;
+
+        RowSampler(MemberDataSpec spec) {
+            this.spec = spec;
+            this.teamSampler = spec.getTeamSkew() > 0 ? new ZipfSampler(spec.getTeams(), spec.getTeamSkew()) : null;
+            this.usernameSampler = spec.getUsernameCardinality() > 0 && spec.getUsernameSkew() > 0
+                    ? new ZipfSampler(spec.getUsernameCardinality(), spec.getUsernameSkew()) : null;
+        }
+
+        SplittableRandom random(long row) {
+            return new SplittableRandom(mix64(spec.getSeed() + row * GOLDEN_GAMMA));
+        }
+
+        int team(long row, SplittableRandom random) {
+            if (teamSampler == null) {
+                return (int) (row % spec.getTeams());
+            }
+            return (int) (teamSampler.sample(random) - 1);
+        }
+
+        String username(long row, SplittableRandom random) {
+            if (spec.getUsernameCardinality() == 0) {
+                return spec.getUsernamePrefix() + row;
+            }
+            long rank = usernameSampler != null
+                    ? usernameSampler.sample(random) - 1
+                    : random.nextLong(spec.getUsernameCardinality());
+            return spec.getUsernamePrefix() + rank;
+        }
+
+        int age(SplittableRandom random) {
+            switch (spec.getAgeDistribution()) {
+                case NORMAL:
+                    //Box-Muller
+                    double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+                    double mean = (spec.getAgeMin() + spec.getAgeMax()) / 2.0;
+                    long age = Math.round(mean + gaussian * spec.getAgeStddev());
+                    return (int) Math.max(spec.getAgeMin(), Math.min(spec.getAgeMax(), age));
+                case UNIFORM:
+                default:
+                    return spec.getAgeMin() + random.nextInt(spec.getAgeMax() - spec.getAgeMin() + 1);
+            }
+        }
+
+        //splitmix64 마무리 함수. 이웃한 row 의 난수열이 겹치지 않게 한다.
+        private static long mix64(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package study.querydsl.init;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * 합성 데이터 모양. 같은 spec 이면 스레드 수나 배치 크기와 상관없이 항상 같은 데이터가 만들어진다.
+ * skew 는 Zipf 지수이고 0 이면 고르게 나눈다.
+ */
+@Value
+@Builder
+public class MemberDataSpec {
+
+    @Builder.Default
+    long seed = 42;
+    @Builder.Default
+    int teams = 2;
+    @Builder.Default
+    long members = 100;
+
+    //팀 이름은 teamPrefix + 0..teams-1, 회원 이름은 usernamePrefix + 번호
+    @Builder.Default
+    String teamPrefix = "team";
+    @Builder.Default
+    String usernamePrefix = "member";
+
+    //0 이면 i 번째 회원을 i % teams 팀에 넣는다.
+    @Builder.Default
+    double teamSkew = 0;
+
+    @Builder.Default
+    AgeDistribution ageDistribution = AgeDistribution.UNIFORM;
+    @Builder.Default
+    int ageMin = 0;
+    @Builder.Default
+    int ageMax = 99;
+    //NORMAL 일 때 표준편차. 평균은 ageMin, ageMax 의 가운데
+    @Builder.Default
+    double ageStddev = 15;
+
+    //서로 다른 회원 이름 수. 0 이면 회원마다 다른 이름(usernamePrefix + i)
+    @Builder.Default
+    long usernameCardinality = 0;
+    @Builder.Default
+    double usernameSkew = 0;
+
+    @Builder.Default
+    int threads = 4;
+    @Builder.Default
+    int batchSize = 1000;
+
+    public enum AgeDistribution {
+        UNIFORM, NORMAL
+    }
+}
@@ -0,0 +1,15 @@
+package study.querydsl.projection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * DTO 에 붙이면 projection-processor 가 같은 패키지에 XxxProjection 을 만든다.
+ * 기본 생성자와 필드마다 setter 가 있어야 한다. (lombok @Data + @NoArgsConstructor 면 된다)
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.SOURCE)
+public @interface GenerateProjection {
+}
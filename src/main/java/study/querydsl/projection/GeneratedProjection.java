@@ -0,0 +1,65 @@
+package study.querydsl.projection;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpressionBase;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Visitor;
+
+import java.util.List;
+
+/**
+ * 생성된 XxxProjection 의 부모. Projections.bean/fields 처럼 이름(별칭)으로 DTO 속성에 매핑하지만,
+ * 어느 컬럼이 어느 속성인지는 만들 때 한 번만 정하고 row 마다는 setter 를 바로 부른다. (리플렉션 없음)
+ */
+public abstract class GeneratedProjection<T> extends FactoryExpressionBase<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Expression<?>> args;
+    //args[i] 가 들어갈 속성 번호. 생성된 클래스의 switch 가 이 번호로 setter 를 고른다.
+    protected final int[] slots;
+
+    protected GeneratedProjection(Class<? extends T> type, List<String> properties, Expression<?>... args) {
+        super(type);
+        this.args = List.of(args);
+        this.slots = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            String name = nameOf(args[i]);
+            slots[i] = properties.indexOf(name);
+            if (slots[i] < 0) {
+                throw new IllegalArgumentException(type.getSimpleName() + " 에 " + name + " 속성이 없습니다.");
+            }
+        }
+    }
+
+    @Override
+    public List<Expression<?>> getArgs() {
+        return args;
+    }
+
+    @Override
+    public <R, C> R accept(Visitor<R, C> v, C context) {
+        return v.visit(this, context);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        return obj != null && obj.getClass() == getClass() && args.equals(((GeneratedProjection<?>) obj).args);
+    }
+
+    //member.username.as("name") 이면 name, member.username 이면 username
+    private static String nameOf(Expression<?> expression) {
+        if (expression instanceof Operation && ((Operation<?>) expression).getOperator() == Ops.ALIAS) {
+            return ((Path<?>) ((Operation<?>) expression).getArg(1)).getMetadata().getName();
+        }
+        if (expression instanceof Path) {
+            return ((Path<?>) expression).getMetadata().getName();
+        }
+        throw new IllegalArgumentException("별칭이 없는 식은 DTO 속성에 매핑할 수 없습니다: " + expression);
+    }
+}
@@ -0,0 +1,21 @@
+package study.querydsl.repository;
+
+import lombok.Value;
+
+/**
+ * 범위 단위 벌크 연산의 진행 상황. 청크 하나가 커밋될 때마다 만들어진다.
+ * [fromId, toId) 범위까지 처리했고, affectedRows 는 지금까지 바뀐 row 의 누적 수다.
+ */
+@Value
+public class MemberBulkProgress {
+    int chunk;
+    long minId;
+    long maxId;
+    long fromId;
+    long toId;
+    long affectedRows;
+
+    public double getRatio() {
+        return Math.min(1.0, (double) (toId - minId) / (maxId - minId + 1));
+    }
+}
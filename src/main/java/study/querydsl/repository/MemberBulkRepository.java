@@ -0,0 +1,183 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUpdateClause;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.event.BulkFinishedEvent;
+import study.querydsl.event.BulkStartedEvent;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 회원 벌크 update/delete 를 member.id 범위로 잘라서 범위마다 짧은 트랜잭션으로 실행한다.
+ * 한 번에 테이블 전체를 잠그지 않으므로 그 사이 검색이 막히지 않는다.
+ * 범위 사이에는 pause 만큼 쉬고, 청크가 커밋될 때마다 진행 상황을 알려 준다.
+ * 캐시와 인덱스에는 청크마다가 아니라 작업 전체에 대해 BulkStartedEvent/BulkFinishedEvent 를 한 번씩 알린다.
+ * <p>
+ * 청크마다 따로 커밋하므로 이미 열린 트랜잭션 안에서는 부를 수 없다. 대신 현재 영속성 컨텍스트(OSIV 등)에
+ * 올라와 있는 해당 범위의 회원은 자동으로 detach 되어서 flush/clear 없이도 다음 조회에서 새 값을 읽는다.
+ * 조건은 member 의 컬럼만 쓸 수 있다. (벌크 JPQL 은 조인을 지원하지 않는다)
+ */
+@Slf4j
+@Repository
+public class MemberBulkRepository {
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    //청크 update/delete 용. 주입받는 factory 는 실행마다 BulkChangedEvent 를 내므로 쓰지 않는다.
+    private final JPAQueryFactory chunkQueryFactory;
+    private final ApplicationEventPublisher publisher;
+    private final TransactionTemplate tx;
+    private final long chunkSize;
+    private final Duration pause;
+
+    public MemberBulkRepository(EntityManager em,
+                                JPAQueryFactory queryFactory,
+                                PlatformTransactionManager transactionManager,
+                                ApplicationEventPublisher publisher,
+                                @Value("${member.bulk.chunk-size:1000}") long chunkSize,
+                                @Value("${member.bulk.pause:50ms}") Duration pause) {
+        this.em = em;
+        this.queryFactory = queryFactory;
+        this.chunkQueryFactory = new JPAQueryFactory(em);
+        this.publisher = publisher;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.pause = pause;
+    }
+
+    public long update(Predicate where, Consumer<JPAUpdateClause> set) {
+        return update(where, set, progress -> { });
+    }
+
+    /**
+     * @param set 바꿀 컬럼을 지정한다. ex) clause -> clause.set(member.age, member.age.add(1))
+     * @return 바뀐 row 수
+     */
+    public long update(Predicate where, Consumer<JPAUpdateClause> set, Consumer<MemberBulkProgress> progress) {
+        return inRanges(where, progress, (fromId, toId) -> {
+            JPAUpdateClause clause = chunkQueryFactory.update(member)
+                    .where(where, member.id.goe(fromId), member.id.lt(toId));
+            set.accept(clause);
+            return clause.execute();
+        });
+    }
+
+    public long delete(Predicate where) {
+        return delete(where, progress -> { });
+    }
+
+    public long delete(Predicate where, Consumer<MemberBulkProgress> progress) {
+        return inRanges(where, progress, (fromId, toId) -> chunkQueryFactory.delete(member)
+                .where(where, member.id.goe(fromId), member.id.lt(toId))
+                .execute());
+    }
+
+    private long inRanges(Predicate where, Consumer<MemberBulkProgress> progress, RangeStatement statement) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalTransactionStateException("청크마다 커밋하므로 트랜잭션 밖에서 호출해야 합니다.");
+        }
+
+        //처음 조건에 맞았던 id 범위만 돈다. 실행 중에 조건이 바뀌어도 같은 row 를 두 번 처리하지 않는다.
+        Tuple bounds = tx.execute(status -> queryFactory
+                .select(member.id.min(), member.id.max())
+                .from(member)
+                .where(where)
+                .fetchOne());
+        Long minId = bounds == null ? null : bounds.get(member.id.min());
+        Long maxId = bounds == null ? null : bounds.get(member.id.max());
+        if (minId == null || maxId == null) {
+            return 0;
+        }
+
+        publisher.publishEvent(new BulkStartedEvent(Member.class));
+        long affected = 0;
+        try {
+            int chunk = 0;
+            Long fromId = minId;
+            while (fromId != null) {
+                long rangeFrom = fromId;
+                long toId = Math.min(rangeFrom + chunkSize, maxId + 1);
+
+                Long rows = tx.execute(status -> {
+                    long count = statement.execute(rangeFrom, toId);
+                    evictMembers(rangeFrom, toId);
+                    return count;
+                });
+                affected += rows == null ? 0 : rows;
+                chunk++;
+
+                MemberBulkProgress current = new MemberBulkProgress(chunk, minId, maxId, rangeFrom, toId, affected);
+                log.debug("member bulk chunk {} [{}, {}) affected={} ({}%)", chunk, rangeFrom, toId, affected,
+                        Math.round(current.getRatio() * 100));
+                progress.accept(current);
+
+                //id 가 띄엄띄엄하면 빈 범위마다 트랜잭션을 열고 쉬지 않도록 다음으로 맞는 id 로 건너뛴다.
+                fromId = toId <= maxId ? nextId(where, toId, maxId) : null;
+                if (fromId != null) {
+                    throttle();
+                }
+            }
+        } finally {
+            publisher.publishEvent(new BulkFinishedEvent(Member.class, affected));
+        }
+        return affected;
+    }
+
+    private Long nextId(Predicate where, long fromId, long maxId) {
+        return tx.execute(status -> queryFactory
+                .select(member.id.min())
+                .from(member)
+                .where(where, member.id.goe(fromId), member.id.loe(maxId))
+                .fetchOne());
+    }
+
+    //벌크 연산은 영속성 컨텍스트를 거치지 않으므로 이미 올라와 있는 회원을 직접 떼어 낸다.
+    private void evictMembers(long fromId, long toId) {
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        for (Map.Entry<Object, EntityEntry> entry : session.getPersistenceContextInternal().reentrantSafeEntityEntries()) {
+            EntityEntry entityEntry = entry.getValue();
+            if (entityEntry.getPersister().getMappedClass() != Member.class) {
+                continue;
+            }
+            Long id = (Long) entityEntry.getId();
+            if (id != null && id >= fromId && id < toId) {
+                em.detach(entry.getKey());
+            }
+        }
+    }
+
+    private void throttle() {
+        if (pause.isZero() || pause.isNegative()) {
+            return;
+        }
+        try {
+            Thread.sleep(pause.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("member bulk operation interrupted", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RangeStatement {
+        long execute(long fromId, long toId);
+    }
+}
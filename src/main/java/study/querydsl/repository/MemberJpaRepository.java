@@ -1,11 +1,11 @@
 package study.querydsl.repository;
 
-import com.querydsl.core.BooleanBuilder;
-import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.cache.MemberSearchKey;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
@@ -20,12 +20,16 @@ import static study.querydsl.entity.QMember.*;
 import static study.querydsl.entity.QTeam.*;
 
 @Repository
+@Transactional(readOnly = true)
 @RequiredArgsConstructor
 public class MemberJpaRepository {
 
     private final EntityManager em;
     private final JPAQueryFactory jpaQueryFactory;
+    private final MemberSearchTemplates searchTemplates;
+    private final UsernameLookup usernameLookup;
 
+    @Transactional
     public void save(Member member) {
         em.persist(member);
     }
@@ -47,55 +51,34 @@ public class MemberJpaRepository {
     }
 
     public List<Member> findByUsername_QueryDsl(String username) {
+        List<Member> indexed = usernameLookup.find(username);
+        if (indexed != null) {
+            return indexed;
+        }
         return jpaQueryFactory
                 .selectFrom(member)
                 .where(member.username.eq(username))
                 .fetch();
     }
 
+    //이름 인덱스로 답할 수 있으면 DB 에 가지 않는다. (UsernameLookup)
     public List<Member> findByUsername(String username) {
+        List<Member> indexed = usernameLookup.find(username);
+        if (indexed != null) {
+            return indexed;
+        }
         return em.createQuery("select m from Member m where m.username = :username", Member.class)
                 .setParameter("username", username)
                 .getResultList();
     }
 
+    //조건 조합별로 미리 만들어 둔 쿼리를 쓴다. BooleanBuilder 로 조립하던 것과 같은 결과
     public List<MemberTeamDto> searchByBuilder(MemberSearchCondition memberSearchCond) {
-
-        BooleanBuilder booleanBuilder = new BooleanBuilder();
-
-        if (hasText(memberSearchCond.getUsername())) {
-            booleanBuilder.and(member.username.eq(memberSearchCond.getUsername()));
-        }
-
-        if (hasText(memberSearchCond.getTeamName())) {
-            booleanBuilder.and(team.name.eq(memberSearchCond.getTeamName()));
-        }
-
-        if (memberSearchCond.getAgeGoe() != null) {
-            booleanBuilder.and(member.age.goe(memberSearchCond.getAgeGoe()));
-        }
-
-        if (memberSearchCond.getAgeLoe() != null) {
-            booleanBuilder.and(member.age.loe(memberSearchCond.getAgeLoe()));
-        }
-        return jpaQueryFactory
-                .select(new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name))
-                .from(member)
-                .join(member.team, team)
-                .where(booleanBuilder)
-                .fetch();
+        return searchTemplates.fetch(MemberSearchKey.of(memberSearchCond));
     }
 
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
-
-        return jpaQueryFactory
-                .select(new QMemberTeamDto(
-                        member.id, member.username, member.age, team.id, team.name
-                ))
-                .from(member)
-                .join(member.team, team)
-                .where(usernameEq(condition.getUsername()), teamNameEq(condition.getTeamName()), ageGoe(condition.getAgeGoe()), ageLoe(condition.getAgeLoe()))
-                .fetch();
+        return searchTemplates.fetch(MemberSearchKey.of(condition));
     }
 
     public List<Member> searchAndMember(MemberSearchCondition condition) {
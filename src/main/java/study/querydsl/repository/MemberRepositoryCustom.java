@@ -1,15 +1,41 @@
 package study.querydsl.repository;
 
 
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Predicate;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import study.querydsl.dto.EstimatedPage;
+import study.querydsl.dto.MemberCursorPage;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface MemberRepositoryCustom {
     List<MemberTeamDto> search(MemberSearchCondition condition);
     Page searchPageSimple(MemberSearchCondition condition, Pageable pageable);
     Page searchPageComplex(MemberSearchCondition condition, Pageable pageable);
+    Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable);
+    Page<MemberTeamDto> searchPageParallel(MemberSearchCondition condition, Pageable pageable);
+    EstimatedPage<MemberTeamDto> searchPageEstimated(MemberSearchCondition condition, Pageable pageable, long countLimit);
+    MemberCursorPage searchByCursor(MemberSearchCondition condition, String cursor, int size);
+    Stream<MemberTeamDto> streamSearch(MemberSearchCondition condition);
+    //쿼리 메서드 대신 이름 인덱스를 먼저 보도록 직접 구현한다.
+    List<Member> findByUsername(String username);
+    List<String> suggestUsernames(String keyword, int limit);
+
+    //QuerydslPredicateExecutor 의 조회 메서드를 가로채서 조건을 정리하고 크기를 검사한다.
+    Iterable<Member> findAll(Predicate predicate);
+    Iterable<Member> findAll(Predicate predicate, Sort sort);
+    Iterable<Member> findAll(Predicate predicate, OrderSpecifier<?>... orders);
+    Page<Member> findAll(Predicate predicate, Pageable pageable);
+    long count(Predicate predicate);
+    Optional<Member> findOne(Predicate predicate);
+    boolean exists(Predicate predicate);
 }
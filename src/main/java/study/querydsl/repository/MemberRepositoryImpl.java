@@ -1,86 +1,416 @@
 package study.querydsl.repository;
 
-import com.querydsl.core.QueryResults;
+import com.mysema.commons.lang.CloseableIterator;
+import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
-import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.core.types.dsl.CaseBuilder;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.support.JpaEntityInformationSupport;
+import org.springframework.data.jpa.repository.support.QuerydslJpaPredicateExecutor;
+import org.springframework.data.querydsl.SimpleEntityPathResolver;
 import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.cache.MemberBitmapIndex;
+import study.querydsl.cache.MemberColumnarIndex;
+import study.querydsl.cache.MemberCountCache;
+import study.querydsl.cache.MemberSearchCache;
+import study.querydsl.cache.MemberSearchKey;
+import study.querydsl.cache.UsernameIndex;
+import study.querydsl.dto.EstimatedPage;
+import study.querydsl.dto.MemberCursorPage;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
 
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static org.springframework.util.StringUtils.hasText;
 import static study.querydsl.entity.QMember.member;
 import static study.querydsl.entity.QTeam.team;
 
+//조회만 하므로 읽기 전용 트랜잭션. 레플리카가 있으면 레플리카로 간다.
+@Transactional(readOnly = true)
 @RequiredArgsConstructor
 public class MemberRepositoryImpl implements MemberRepositoryCustom {
 
     private final JPAQueryFactory queryFactory;
+    private final MemberSearchCache searchCache;
+    private final MemberCountCache countCache;
+    private final MemberSearchTemplates searchTemplates;
+    private final MemberColumnarIndex columnarIndex;
+    private final MemberBitmapIndex bitmapIndex;
+    private final UsernameIndex usernameIndex;
+    private final UsernameLookup usernameLookup;
+    private final ReadOnlyQueryExecutor readOnlyQueryExecutor;
+    private final EntityManager em;
+    private final PredicateGuard predicateGuard;
+
+    @Value("${member.stream.fetch-size:1000}")
+    private int streamFetchSize;
+    //QuerydslPredicateExecutor 기본 구현. 조건을 정리한 뒤에 넘긴다.
+    private QuerydslJpaPredicateExecutor<Member> predicateExecutor;
+
+    @PostConstruct
+    public void init() {
+        predicateExecutor = new QuerydslJpaPredicateExecutor<>(
+                JpaEntityInformationSupport.getEntityInformation(Member.class, em), em, SimpleEntityPathResolver.INSTANCE, null);
+    }
 
     @Override
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
-        return queryFactory
-                .select(new QMemberTeamDto(
-                        member.id, member.username, member.age, team.id, team.name
-                ))
-                .from(member)
-                .join(member.team, team)
-                .where(usernameEq(condition.getUsername()), teamNameEq(condition.getTeamName()), ageGoe(condition.getAgeGoe()), ageLoe(condition.getAgeLoe()))
-                .fetch();
+        MemberSearchKey key = MemberSearchKey.of(condition);
+        //member.search.engine=columnar 면 DB 대신 메모리 인덱스에서 찾는다.
+        if (columnarIndex.isUsable(key)) {
+            return columnarIndex.search(key);
+        }
+        if (!searchCache.isUsable()) {
+            return searchFromDb(condition);
+        }
+
+        List<MemberTeamDto> cached = searchCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = searchCache.generation();
+        List<MemberTeamDto> result = searchFromDb(condition);
+        searchCache.put(key, result, generation);
+        return result;
+    }
+
+    private List<MemberTeamDto> searchFromDb(MemberSearchCondition condition) {
+        return searchTemplates.fetch(MemberSearchKey.of(condition));
     }
 
     @Override
     public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
-        QueryResults<MemberTeamDto> results = queryFactory
+        MemberSearchKey key = MemberSearchKey.of(condition);
+        if (columnarIndex.isUsable(key)) {
+            return columnarIndex.searchPage(key, pageable);
+        }
+
+        //fetchResults 처럼 count 를 먼저 하고 0 이면 컨텐츠 쿼리를 생략
+        long total = searchTemplates.count(key);
+        List<MemberTeamDto> content = total > pageable.getOffset()
+                ? searchTemplates.fetchPage(key, pageable.getOffset(), pageable.getPageSize(), pageable.getSort())
+                : Collections.emptyList();
+
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    //카운트쿼리 따로 날림
+    @Override
+    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+        MemberSearchKey key = MemberSearchKey.of(condition);
+        if (columnarIndex.isUsable(key)) {
+            return columnarIndex.searchPage(key, pageable);
+        }
+        if (bitmapIndex.isUsable(key)) {
+            return searchPageWithBitmaps(key, pageable);
+        }
+        List<MemberTeamDto> content = searchTemplates.fetchPage(key, pageable.getOffset(), pageable.getPageSize(), pageable.getSort());
+
+        //페이지 시작이면서 컨텐츠 사이즈가 페이지 사이즈보다 작을 때
+        //마지막 페이지 일 때 (offset + 컨텐츠 사이즈를 더해서 전체 사이즈 구함)
+        //같은 조건으로 페이지를 넘길 때마다 count 를 다시 세지 않도록 캐시를 거친다.
+        return PageableExecutionUtils.getPage(content, pageable, () -> countCache.count(key, () -> searchTemplates.count(key)));
+//        return new PageImpl<>(content, pageable, total);
+    }
+
+    //total 은 비트맵 cardinality 로 구한다. id 순 페이지면 컨텐츠도 비트맵에서 고른 id 로만 읽는다.
+    private Page<MemberTeamDto> searchPageWithBitmaps(MemberSearchKey key, Pageable pageable) {
+        long total = bitmapIndex.count(key);
+        if (total <= pageable.getOffset()) {
+            return new PageImpl<>(Collections.emptyList(), pageable, total);
+        }
+        List<Long> ids = isIdOrder(pageable.getSort())
+                ? bitmapIndex.pageIds(key, pageable.getOffset(), pageable.getPageSize())
+                : null;
+        List<MemberTeamDto> content = ids != null
+                ? searchTemplates.fetchByIds(ids)
+                : searchTemplates.fetchPage(key, pageable.getOffset(), pageable.getPageSize(), pageable.getSort());
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    private static boolean isIdOrder(Sort sort) {
+        if (sort.isUnsorted()) {
+            return true;
+        }
+        List<Sort.Order> orders = sort.toList();
+        return orders.size() == 1 && orders.get(0).getProperty().equals("memberId") && orders.get(0).isAscending();
+    }
+
+    //count 없이 pageSize + 1 개를 읽어서 다음 페이지 여부만 알려준다. 무한 스크롤용
+    @Override
+    public Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable) {
+        List<MemberTeamDto> content = searchTemplates.fetchPage(MemberSearchKey.of(condition), pageable.getOffset(), pageable.getPageSize() + 1, pageable.getSort());
+
+        boolean hasNext = content.size() > pageable.getPageSize();
+        if (hasNext) {
+            content = content.subList(0, pageable.getPageSize());
+        }
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+
+    //컨텐츠와 count 를 각각 다른 커넥션에서 동시에 실행한다. 응답 시간이 둘의 합이 아니라 느린 쪽이 된다.
+    //기다리는 동안 호출한 쪽이 커넥션을 잡고 있으면 요청 하나가 커넥션 셋을 쓰고 부하 때 풀이 바닥나므로 트랜잭션 밖에서 실행한다.
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Page<MemberTeamDto> searchPageParallel(MemberSearchCondition condition, Pageable pageable) {
+        MemberSearchKey key = MemberSearchKey.of(condition);
+
+        Future<List<MemberTeamDto>> contentFuture;
+        Future<Long> countFuture;
+        try {
+            contentFuture = readOnlyQueryExecutor.submit(() -> searchTemplates.fetchPage(key, pageable.getOffset(), pageable.getPageSize(), pageable.getSort()));
+        } catch (RejectedExecutionException e) {
+            return searchPageComplex(condition, pageable);
+        }
+        try {
+            countFuture = readOnlyQueryExecutor.submit(() -> countCache.count(key, () -> searchTemplates.count(key)));
+        } catch (RejectedExecutionException e) {
+            contentFuture.cancel(true);
+            return searchPageComplex(condition, pageable);
+        }
+
+        long deadline = System.nanoTime() + readOnlyQueryExecutor.getTimeout().toNanos();
+        try {
+            List<MemberTeamDto> content = await(contentFuture, deadline);
+            Page<MemberTeamDto> page = PageableExecutionUtils.getPage(content, pageable, () -> await(countFuture, deadline));
+            //컨텐츠만으로 전체 건수가 나오면 count 는 필요 없다.
+            countFuture.cancel(true);
+            return page;
+        } catch (RuntimeException e) {
+            contentFuture.cancel(true);
+            countFuture.cancel(true);
+            throw e;
+        }
+    }
+
+    private static <T> T await(Future<T> future, long deadlineNanos) {
+        try {
+            return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new QueryTimeoutException("페이징 쿼리 시간 초과", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryTimeoutException("페이징 쿼리 대기 중 인터럽트", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    //전체 count 대신 countLimit 건까지만 세고, 넘으면 "countLimit 이상"으로 돌려준다.
+    @Override
+    public EstimatedPage<MemberTeamDto> searchPageEstimated(MemberSearchCondition condition, Pageable pageable, long countLimit) {
+        MemberSearchKey key = MemberSearchKey.of(condition);
+        //pageSize + 1 개를 읽어서 다음 페이지가 있는지 같이 확인. 다른 페이징과 같이 요청 정렬 뒤에 member.id 를 붙인다.
+        List<MemberTeamDto> content = searchTemplates.fetchPage(key, pageable.getOffset(), pageable.getPageSize() + 1, pageable.getSort());
+
+        boolean hasNext = content.size() > pageable.getPageSize();
+        if (hasNext) {
+            content = content.subList(0, pageable.getPageSize());
+        }
+
+        //마지막 페이지면 count 없이 정확한 전체 건수를 알 수 있다. 끝을 지난 빈 페이지는 offset 으로 알 수 없으므로 센다.
+        if (!hasNext && (!content.isEmpty() || pageable.getOffset() == 0)) {
+            return new EstimatedPage<>(content, pageable, pageable.getOffset() + content.size(), false);
+        }
+
+        //id 를 countLimit + 1 개까지만 넘겨 본다. 비용이 countLimit 에서 멈춘다.
+        long counted = searchTemplates.countUpTo(key, countLimit);
+
+        if (counted <= countLimit) {
+            return new EstimatedPage<>(content, pageable, counted, false);
+        }
+        //countLimit 보다 깊은 페이지라도 다음 페이지 버튼은 살아 있도록 현재 페이지 + 1 건은 보장
+        long atLeast = hasNext ? Math.max(countLimit, pageable.getOffset() + content.size() + 1) : countLimit;
+        return new EstimatedPage<>(content, pageable, atLeast, true);
+    }
+
+    //offset 대신 마지막 member.id 이후부터 읽는다. 페이지가 깊어져도 앞쪽 row 를 버리는 비용이 없다.
+    @Override
+    public MemberCursorPage searchByCursor(MemberSearchCondition condition, String cursor, int size) {
+        Long lastMemberId = MemberCursor.decode(cursor);
+
+        //size + 1 개를 읽어서 다음 페이지 존재 여부를 판단
+        List<MemberTeamDto> content = queryFactory
                 .select(new QMemberTeamDto(
                         member.id, member.username, member.age, team.id, team.name
                 ))
                 .from(member)
                 .join(member.team, team)
-                .where(usernameEq(condition.getUsername()), teamNameEq(condition.getTeamName()), ageGoe(condition.getAgeGoe()), ageLoe(condition.getAgeLoe()))
-                .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
-                .fetchResults();
+                .where(idGt(lastMemberId), usernameEq(condition.getUsername()), teamNameEq(condition.getTeamName()), ageGoe(condition.getAgeGoe()), ageLoe(condition.getAgeLoe()))
+                .orderBy(member.id.asc())
+                .limit(size + 1)
+                .fetch();
 
-        List<MemberTeamDto> content = results.getResults();
-        long total = results.getTotal();
+        boolean hasNext = content.size() > size;
+        if (hasNext) {
+            content = content.subList(0, size);
+        }
+        String nextCursor = hasNext ? MemberCursor.encode(content.get(content.size() - 1).getMemberId()) : null;
 
-        return new PageImpl<>(content, pageable, total);
+        return new MemberCursorPage(content, nextCursor, hasNext);
     }
 
-    //카운트쿼리 따로 날림
+    //배치용. 결과를 List 로 모으지 않고 fetchSize 단위로 커서에서 읽어 온다.
+    //호출하는 쪽 트랜잭션 안에서만 쓸 수 있고, 다 쓰면 반드시 close 해야 커서와 커넥션이 풀린다. (try-with-resources)
     @Override
-    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
-        List<MemberTeamDto> content = queryFactory
+    @Transactional(readOnly = true, propagation = Propagation.MANDATORY)
+    public Stream<MemberTeamDto> streamSearch(MemberSearchCondition condition) {
+        CloseableIterator<MemberTeamDto> rows = queryFactory
                 .select(new QMemberTeamDto(
                         member.id, member.username, member.age, team.id, team.name
                 ))
                 .from(member)
                 .join(member.team, team)
                 .where(usernameEq(condition.getUsername()), teamNameEq(condition.getTeamName()), ageGoe(condition.getAgeGoe()), ageLoe(condition.getAgeLoe()))
-                .offset(pageable.getOffset())
-                .limit(pageable.getPageSize())
+                .orderBy(member.id.asc())
+                .setHint(QueryHints.FETCH_SIZE, streamFetchSize)
+                .setHint(QueryHints.READ_ONLY, true)
+                .iterate();
+
+        //DTO 프로젝션이라 영속성 컨텍스트에 쌓이지 않는다. 호출한 쪽 트랜잭션을 같이 쓰므로 여기서 비우지 않는다.
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(rows::close);
+    }
+
+    //이름 인덱스로 답할 수 있으면 DB 에 가지 않는다. (UsernameLookup)
+    @Override
+    public List<Member> findByUsername(String username) {
+        List<Member> indexed = usernameLookup.find(username);
+        if (indexed != null) {
+            return indexed;
+        }
+        return queryFactory
+                .selectFrom(member)
+                .where(member.username.eq(username))
                 .fetch();
+    }
+
+    //자동완성. 앞부분 일치를 먼저, 3 글자 이상이면 중간 일치를 뒤에 붙인다. 자동완성 인덱스를 켜면 메모리에서만 답한다.
+    @Override
+    public List<String> suggestUsernames(String keyword, int limit) {
+        if (!hasText(keyword)) {
+            return Collections.emptyList();
+        }
+        if (usernameIndex.isSuggestUsable()) {
+            return usernameIndex.suggest(keyword, limit);
+        }
 
-        JPAQuery<Member> countQuery = queryFactory
-                .select(member)
+        BooleanExpression prefix = member.username.startsWith(keyword);
+        return queryFactory
+                .select(member.username)
                 .from(member)
-                .join(member.team, team)
-                .where(usernameEq(condition.getUsername()), teamNameEq(condition.getTeamName()), ageGoe(condition.getAgeGoe()), ageLoe(condition.getAgeLoe()));
+                .where(keyword.length() >= 3 ? member.username.contains(keyword) : prefix)
+                .groupBy(member.username)
+                .orderBy(new CaseBuilder().when(prefix).then(0).otherwise(1).asc(), member.username.asc())
+                .limit(limit)
+                .fetch();
+    }
 
+    //QuerydslPredicateExecutor 메서드. 같은 뜻의 조건은 같은 JPQL 이 되도록 정리하고, 항상 거짓이면 DB 에 가지 않는다.
+    @Override
+    public Iterable<Member> findAll(Predicate predicate) {
+        Predicate canonical = predicateGuard.canonicalize(predicate);
+        if (predicateGuard.isAlwaysFalse(canonical)) {
+            return Collections.emptyList();
+        }
+        return predicateExecutor.findAll(whereOf(canonical));
+    }
 
-        //페이지 시작이면서 컨텐츠 사이즈가 페이지 사이즈보다 작을 때
-        //마지막 페이지 일 때 (offset + 컨텐츠 사이즈를 더해서 전체 사이즈 구함)
-        return PageableExecutionUtils.getPage(content, pageable, countQuery::fetchCount);
-//        return new PageImpl<>(content, pageable, total);
+    @Override
+    public Iterable<Member> findAll(Predicate predicate, Sort sort) {
+        Predicate canonical = predicateGuard.canonicalize(predicate);
+        if (predicateGuard.isAlwaysFalse(canonical)) {
+            return Collections.emptyList();
+        }
+        return predicateExecutor.findAll(whereOf(canonical), sort);
+    }
+
+    @Override
+    public Iterable<Member> findAll(Predicate predicate, OrderSpecifier<?>... orders) {
+        Predicate canonical = predicateGuard.canonicalize(predicate);
+        if (predicateGuard.isAlwaysFalse(canonical)) {
+            return Collections.emptyList();
+        }
+        return predicateExecutor.findAll(whereOf(canonical), orders);
+    }
+
+    @Override
+    public Page<Member> findAll(Predicate predicate, Pageable pageable) {
+        Predicate canonical = predicateGuard.canonicalize(predicate);
+        if (predicateGuard.isAlwaysFalse(canonical)) {
+            return new PageImpl<>(Collections.emptyList(), pageable, 0);
+        }
+        return predicateExecutor.findAll(whereOf(canonical), pageable);
+    }
+
+    @Override
+    public long count(Predicate predicate) {
+        Predicate canonical = predicateGuard.canonicalize(predicate);
+        if (predicateGuard.isAlwaysFalse(canonical)) {
+            return 0;
+        }
+        return predicateExecutor.count(whereOf(canonical));
+    }
+
+    @Override
+    public Optional<Member> findOne(Predicate predicate) {
+        Predicate canonical = predicateGuard.canonicalize(predicate);
+        if (predicateGuard.isAlwaysFalse(canonical)) {
+            return Optional.empty();
+        }
+        return predicateExecutor.findOne(whereOf(canonical));
+    }
+
+    @Override
+    public boolean exists(Predicate predicate) {
+        Predicate canonical = predicateGuard.canonicalize(predicate);
+        if (predicateGuard.isAlwaysFalse(canonical)) {
+            return false;
+        }
+        return predicateExecutor.exists(whereOf(canonical));
+    }
+
+    //항상 참이면 조건 없이
+    private Predicate whereOf(Predicate canonical) {
+        return predicateGuard.isAlwaysTrue(canonical) ? new BooleanBuilder() : canonical;
+    }
+
+    private BooleanExpression idGt(Long lastMemberId) {
+        return lastMemberId != null ? member.id.gt(lastMemberId) : null;
     }
 
     private BooleanExpression ageBetween(int ageGoe, int ageLoe) {
@@ -0,0 +1,446 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.Param;
+import com.querydsl.jpa.JPAQueryBase;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.JPQLTemplates;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAQuery;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.advisor.IndexAdvisor;
+import study.querydsl.cache.MemberSearchKey;
+import study.querydsl.cache.MemberSortProperty;
+import study.querydsl.cache.TeamDictionary;
+import study.querydsl.dto.MemberTeamDto;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 회원 검색 조건 4개가 있고 없고에 따라 나올 수 있는 쿼리는 16가지뿐이다.
+ * 시작할 때 16가지 모양을 한 번씩 JPQL 로 만들어 두고, 요청마다는 파라미터만 바인딩해서 실행한다.
+ * 매번 querydsl 표현식을 만들고 JPQL 로 직렬화하는 비용이 없어진다.
+ * 정렬은 허용된 속성만 order by 문자열로 덧붙인다.
+ * <p>
+ * 팀 사전({@link TeamDictionary})을 쓸 수 있으면 팀 이름 조건을 team_id 조건으로 바꾸고 팀 조인 없이 member 테이블만 읽는다.
+ * 팀 이름은 사전에서 채운다.
+ */
+@Component
+public class MemberSearchTemplates {
+
+    private static final int USERNAME = 1;
+    private static final int TEAM = 1 << 1;
+    private static final int AGE_GOE = 1 << 2;
+    private static final int AGE_LOE = 1 << 3;
+    private static final int SHAPES = 1 << 4;
+    private static final int COUNT_FETCH_SIZE = 1000;
+
+    private static final Param<String> USERNAME_PARAM = new Param<>(String.class, "username");
+    private static final Param<String> TEAM_NAME_PARAM = new Param<>(String.class, "teamName");
+    private static final Param<Collection<Long>> TEAM_IDS_PARAM = new Param<>(longCollectionType(), "teamIds");
+    private static final Param<Integer> AGE_GOE_PARAM = new Param<>(Integer.class, "ageGoe");
+    private static final Param<Integer> AGE_LOE_PARAM = new Param<>(Integer.class, "ageLoe");
+    private static final Param<Collection<Long>> MEMBER_IDS_PARAM = new Param<>(longCollectionType(), "memberIds");
+
+    //정렬 속성별 컬럼
+    private static final Map<MemberSortProperty, Path<?>> JOIN_SORTABLE = Map.of(
+            MemberSortProperty.MEMBER_ID, member.id,
+            MemberSortProperty.USERNAME, member.username,
+            MemberSortProperty.AGE, member.age,
+            MemberSortProperty.TEAM_ID, team.id,
+            MemberSortProperty.TEAM_NAME, team.name);
+    //팀 조인이 없으면 팀 이름으로는 정렬할 수 없다. (canSkipTeamJoin)
+    private static final Map<MemberSortProperty, Path<?>> MEMBER_ONLY_SORTABLE = Map.of(
+            MemberSortProperty.MEMBER_ID, member.id,
+            MemberSortProperty.USERNAME, member.username,
+            MemberSortProperty.AGE, member.age,
+            MemberSortProperty.TEAM_ID, member.team.id);
+
+    private final EntityManager em;
+    private final TeamDictionary teamDictionary;
+    private final IndexAdvisor indexAdvisor;
+    private final long deferredJoinOffset;
+    private Shapes joinShapes;
+    private Shapes memberOnlyShapes;
+
+    public MemberSearchTemplates(EntityManager em, TeamDictionary teamDictionary, IndexAdvisor indexAdvisor,
+                                 @Value("${member.paging.deferred-join-offset:1000}") long deferredJoinOffset) {
+        this.em = em;
+        this.teamDictionary = teamDictionary;
+        this.indexAdvisor = indexAdvisor;
+        this.deferredJoinOffset = deferredJoinOffset;
+    }
+
+    @PostConstruct
+    public void compile() {
+        JPQLTemplates templates = JPAProvider.getTemplates(em);
+        joinShapes = new Shapes(templates, true);
+        memberOnlyShapes = new Shapes(templates, false);
+    }
+
+    public List<MemberTeamDto> fetch(MemberSearchKey key) {
+        long start = System.nanoTime();
+        try {
+            return doFetch(key);
+        } finally {
+            indexAdvisor.record(key, Sort.unsorted(), System.nanoTime() - start);
+        }
+    }
+
+    private List<MemberTeamDto> doFetch(MemberSearchKey key) {
+        if (canSkipTeamJoin(Sort.unsorted())) {
+            List<MemberTeamDto> result = fetchMemberOnly(key, -1, -1, Sort.unsorted());
+            if (result != null) {
+                return result;
+            }
+        }
+        return toDtos(joinShapes.content[shapeOf(key)].bind(em, key, key.getTeamName(), "").getResultList());
+    }
+
+    /**
+     * offset 페이징. 정렬이 없으면 member.id 순서로 고정하고, 정렬이 있어도 member.id 를 마지막 기준으로 붙인다.
+     * offset 이 deferred-join-offset 이상이면 좁은 id 만 먼저 골라낸 뒤 그 id 들의 row 만 읽는다.
+     * {@link MemberSortProperty} 에 없는 정렬 속성은 무시한다.
+     */
+    public List<MemberTeamDto> fetchPage(MemberSearchKey key, long offset, int limit, Sort sort) {
+        //JPA 의 firstResult 는 int 다. 그보다 깊은 페이지는 채울 row 가 있을 수 없으므로 쿼리 없이 빈 페이지
+        if (offset > Integer.MAX_VALUE) {
+            return new ArrayList<>();
+        }
+        sort = MemberSortProperty.sortable(sort);
+        long start = System.nanoTime();
+        try {
+            return doFetchPage(key, offset, limit, sort);
+        } finally {
+            //요청의 sort 가 아니라 걸러 낸 sort 를 남긴다. (QueryShape)
+            indexAdvisor.record(key, sort, System.nanoTime() - start);
+        }
+    }
+
+    private List<MemberTeamDto> doFetchPage(MemberSearchKey key, long offset, int limit, Sort sort) {
+        if (canSkipTeamJoin(sort)) {
+            List<MemberTeamDto> result = fetchMemberOnly(key, offset, limit, sort);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        String orderBy = orderBy(sort, JOIN_SORTABLE);
+        if (offset >= deferredJoinOffset) {
+            return fetchDeferred(joinShapes, key, key.getTeamName(), offset, limit, orderBy);
+        }
+
+        Query query = joinShapes.content[shapeOf(key)].bind(em, key, key.getTeamName(), orderBy);
+        query.setFirstResult(Math.toIntExact(offset));
+        query.setMaxResults(limit);
+        return toDtos(query.getResultList());
+    }
+
+    public long count(MemberSearchKey key) {
+        long start = System.nanoTime();
+        try {
+            return doCount(key);
+        } finally {
+            indexAdvisor.record(key, Sort.unsorted(), System.nanoTime() - start);
+        }
+    }
+
+    private long doCount(MemberSearchKey key) {
+        if (canSkipTeamJoin(Sort.unsorted())) {
+            Set<Long> teamIds = teamIdsOf(key);
+            if (key.getTeamName() == null || teamIds != null) {
+                return (Long) memberOnlyShapes.count[shapeOf(key)].bind(em, key, teamIds, "").getSingleResult();
+            }
+        }
+        return (Long) joinShapes.count[shapeOf(key)].bind(em, key, key.getTeamName(), "").getSingleResult();
+    }
+
+    /**
+     * limit 건까지만 센다. id 쿼리를 커서로 limit + 1 건까지 넘겨 보기만 하고 List 로 모으지 않는다.
+     *
+     * 커서를 다 넘길 때까지 같은 커넥션을 잡고 있어야 하므로 트랜잭션 안에서 실행한다.
+     *
+     * @return limit 보다 많으면 limit + 1
+     */
+    @Transactional(readOnly = true)
+    public long countUpTo(MemberSearchKey key, long limit) {
+        long start = System.nanoTime();
+        try {
+            return doCountUpTo(key, limit);
+        } finally {
+            indexAdvisor.record(key, Sort.unsorted(), System.nanoTime() - start);
+        }
+    }
+
+    private long doCountUpTo(MemberSearchKey key, long limit) {
+        Query query = null;
+        if (canSkipTeamJoin(Sort.unsorted())) {
+            Set<Long> teamIds = teamIdsOf(key);
+            if (key.getTeamName() == null || teamIds != null) {
+                query = memberOnlyShapes.ids[shapeOf(key)].bind(em, key, teamIds, "");
+            }
+        }
+        if (query == null) {
+            query = joinShapes.ids[shapeOf(key)].bind(em, key, key.getTeamName(), "");
+        }
+        int maxResults = (int) Math.min(limit + 1, Integer.MAX_VALUE);
+        query.setMaxResults(maxResults)
+                .setHint(QueryHints.FETCH_SIZE, Math.min(maxResults, COUNT_FETCH_SIZE))
+                .setHint(QueryHints.READ_ONLY, true);
+        try (Stream<?> ids = query.getResultStream()) {
+            return ids.count();
+        }
+    }
+
+    private boolean canSkipTeamJoin(Sort sort) {
+        return teamDictionary.isUsable() && sort.getOrderFor("teamName") == null;
+    }
+
+    /**
+     * 팀 조인 없이 읽고 팀 이름은 사전에서 채운다.
+     * 조건의 팀 이름을 사전이 모르거나 결과에 사전이 모르는 팀이 섞여 있으면(막 커밋된 팀 등) null 을 돌려주고,
+     * 호출한 쪽은 조인 쿼리로 다시 읽는다.
+     *
+     * @param offset 음수면 페이징 없음
+     */
+    private List<MemberTeamDto> fetchMemberOnly(MemberSearchKey key, long offset, int limit, Sort sort) {
+        Set<Long> teamIds = teamIdsOf(key);
+        if (key.getTeamName() != null && teamIds == null) {
+            return null;
+        }
+
+        List<MemberTeamDto> rows;
+        if (offset < 0) {
+            rows = toDtos(memberOnlyShapes.content[shapeOf(key)].bind(em, key, teamIds, "").getResultList());
+        } else {
+            String orderBy = orderBy(sort, MEMBER_ONLY_SORTABLE);
+            if (offset >= deferredJoinOffset) {
+                rows = fetchDeferred(memberOnlyShapes, key, teamIds, offset, limit, orderBy);
+            } else {
+                Query query = memberOnlyShapes.content[shapeOf(key)].bind(em, key, teamIds, orderBy);
+                query.setFirstResult(Math.toIntExact(offset));
+                query.setMaxResults(limit);
+                rows = toDtos(query.getResultList());
+            }
+        }
+
+        for (MemberTeamDto row : rows) {
+            String teamName = teamDictionary.nameOf(row.getTeamId());
+            if (teamName == null) {
+                return null;
+            }
+            row.setTeamName(teamName);
+        }
+        return rows;
+    }
+
+    //팀 이름 조건이 없거나 사전에 없는 이름이면 null
+    private Set<Long> teamIdsOf(MemberSearchKey key) {
+        return key.getTeamName() == null ? null : teamDictionary.idsOf(key.getTeamName());
+    }
+
+    //offset 만큼 건너뛰는 비용을 id 컬럼만 읽는 쿼리에서 치르고, 실제 row 는 페이지 크기만큼만 읽는다.
+    @SuppressWarnings("unchecked")
+    private List<MemberTeamDto> fetchDeferred(Shapes shapes, MemberSearchKey key, Object teamValue,
+                                              long offset, int limit, String orderBy) {
+        List<Long> ids = shapes.ids[shapeOf(key)].bind(em, key, teamValue, orderBy)
+                .setFirstResult(Math.toIntExact(offset))
+                .setMaxResults(limit)
+                .getResultList();
+        return fetchByIds(shapes, ids);
+    }
+
+    /**
+     * 이미 골라 둔 id 들의 row 만 팀 조인으로 읽는다. 결과는 memberIds 순서를 따른다.
+     */
+    public List<MemberTeamDto> fetchByIds(List<Long> memberIds) {
+        return fetchByIds(joinShapes, memberIds);
+    }
+
+    private List<MemberTeamDto> fetchByIds(Shapes shapes, List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<MemberTeamDto> rows = toDtos(shapes.byIds.bindIds(em, ids).getResultList());
+
+        //in 절은 순서를 보장하지 않으므로 id 쿼리의 순서대로 다시 맞춘다.
+        Map<Long, MemberTeamDto> byId = new HashMap<>();
+        for (MemberTeamDto row : rows) {
+            byId.put(row.getMemberId(), row);
+        }
+        List<MemberTeamDto> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            MemberTeamDto row = byId.get(id);
+            if (row != null) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private static String orderBy(Sort sort, Map<MemberSortProperty, Path<?>> sortable) {
+        StringBuilder orderBy = new StringBuilder("\norder by ");
+        for (Sort.Order order : sort) {
+            Path<?> path = sortable.get(MemberSortProperty.of(order.getProperty()));
+            if (path == null || path == member.id) {
+                continue;
+            }
+            orderBy.append(path).append(order.isAscending() ? " asc, " : " desc, ");
+        }
+        Sort.Order idOrder = sort.getOrderFor("memberId");
+        return orderBy.append(member.id).append(idOrder != null && idOrder.isDescending() ? " desc" : " asc").toString();
+    }
+
+    //팀 조인이 없는 쿼리는 팀 이름 자리가 비어 있다.
+    @SuppressWarnings("unchecked")
+    private static List<MemberTeamDto> toDtos(List<?> rows) {
+        List<MemberTeamDto> result = new ArrayList<>(rows.size());
+        for (Object[] row : (List<Object[]>) rows) {
+            String teamName = row.length > 4 ? (String) row[4] : null;
+            result.add(new MemberTeamDto((Long) row[0], (String) row[1], (Integer) row[2], (Long) row[3], teamName));
+        }
+        return result;
+    }
+
+    private static int shapeOf(MemberSearchKey key) {
+        int shape = 0;
+        if (key.getUsername() != null) shape |= USERNAME;
+        if (key.getTeamName() != null) shape |= TEAM;
+        if (key.getAgeGoe() != null) shape |= AGE_GOE;
+        if (key.getAgeLoe() != null) shape |= AGE_LOE;
+        return shape;
+    }
+
+    private static boolean has(int shape, int condition) {
+        return (shape & condition) != 0;
+    }
+
+    /**
+     * 16가지 조건 조합 각각의 컨텐츠/count/id 쿼리.
+     * 조인 버전은 팀 이름으로 거르고, member 만 읽는 버전은 team_id in (...) 으로 거른다.
+     */
+    private class Shapes {
+
+        final CompiledQuery[] content = new CompiledQuery[SHAPES];
+        final CompiledQuery[] count = new CompiledQuery[SHAPES];
+        final CompiledQuery[] ids = new CompiledQuery[SHAPES];
+        final CompiledQuery byIds;
+
+        Shapes(JPQLTemplates templates, boolean joinTeam) {
+            for (int shape = 0; shape < SHAPES; shape++) {
+                Predicate teamCondition;
+                if (joinTeam) {
+                    teamCondition = has(shape, TEAM) ? team.name.eq(TEAM_NAME_PARAM) : null;
+                } else {
+                    //inner join 과 같은 결과가 나오도록 팀이 없는 회원은 뺀다.
+                    teamCondition = has(shape, TEAM)
+                            ? Expressions.booleanTemplate("{0} in {1}", member.team.id, TEAM_IDS_PARAM)
+                            : member.team.id.isNotNull();
+                }
+                Predicate[] where = {
+                        has(shape, USERNAME) ? member.username.eq(USERNAME_PARAM) : null,
+                        teamCondition,
+                        has(shape, AGE_GOE) ? member.age.goe(AGE_GOE_PARAM) : null,
+                        has(shape, AGE_LOE) ? member.age.loe(AGE_LOE_PARAM) : null};
+
+                JPAQuery<?> query = select(templates, joinTeam).where(where);
+                content[shape] = CompiledQuery.of(query, templates, false);
+                count[shape] = CompiledQuery.of(query, templates, true);
+
+                JPAQuery<?> idQuery = new JPAQuery<Void>(em, templates).select(member.id).from(member);
+                if (joinTeam) {
+                    idQuery.join(member.team, team);
+                }
+                ids[shape] = CompiledQuery.of(idQuery.where(where), templates, false);
+            }
+            byIds = CompiledQuery.of(select(templates, joinTeam)
+                    .where(Expressions.booleanTemplate("{0} in {1}", member.id, MEMBER_IDS_PARAM)), templates, false);
+        }
+
+        private JPAQuery<?> select(JPQLTemplates templates, boolean joinTeam) {
+            if (joinTeam) {
+                return new JPAQuery<Void>(em, templates)
+                        .select(member.id, member.username, member.age, team.id, team.name)
+                        .from(member)
+                        .join(member.team, team);
+            }
+            return new JPAQuery<Void>(em, templates)
+                    .select(member.id, member.username, member.age, member.team.id)
+                    .from(member);
+        }
+    }
+
+    //Collection<Long>.class 는 쓸 수 없어서 한 번만 캐스팅한다.
+    @SuppressWarnings("unchecked")
+    private static Class<Collection<Long>> longCollectionType() {
+        return (Class<Collection<Long>>) (Class<?>) Collection.class;
+    }
+
+    /**
+     * 직렬화된 JPQL 과 각 조건 값이 들어갈 위치 파라미터 번호. 조건이 없으면 0.
+     */
+    private static class CompiledQuery {
+
+        private final String jpql;
+        private final int usernamePosition;
+        private final int teamPosition;
+        private final int ageGoePosition;
+        private final int ageLoePosition;
+        private final int memberIdsPosition;
+
+        private CompiledQuery(String jpql, Map<Object, Integer> labels) {
+            this.jpql = jpql;
+            this.usernamePosition = position(labels, USERNAME_PARAM);
+            this.teamPosition = Math.max(position(labels, TEAM_NAME_PARAM), position(labels, TEAM_IDS_PARAM));
+            this.ageGoePosition = position(labels, AGE_GOE_PARAM);
+            this.ageLoePosition = position(labels, AGE_LOE_PARAM);
+            this.memberIdsPosition = position(labels, MEMBER_IDS_PARAM);
+        }
+
+        static CompiledQuery of(JPAQueryBase<?, ?> query, JPQLTemplates templates, boolean forCount) {
+            JPQLSerializer serializer = new JPQLSerializer(templates);
+            serializer.serialize(query.getMetadata(), forCount, null);
+            return new CompiledQuery(serializer.toString(), serializer.getConstantToNumberedLabel());
+        }
+
+        /**
+         * @param teamValue 조인 버전이면 팀 이름, member 만 읽는 버전이면 팀 id 목록
+         */
+        Query bind(EntityManager em, MemberSearchKey key, Object teamValue, String orderBy) {
+            Query query = em.createQuery(orderBy.isEmpty() ? jpql : jpql + orderBy);
+            if (usernamePosition > 0) query.setParameter(usernamePosition, key.getUsername());
+            if (teamPosition > 0) query.setParameter(teamPosition, teamValue);
+            if (ageGoePosition > 0) query.setParameter(ageGoePosition, key.getAgeGoe());
+            if (ageLoePosition > 0) query.setParameter(ageLoePosition, key.getAgeLoe());
+            return query;
+        }
+
+        Query bindIds(EntityManager em, Collection<Long> memberIds) {
+            return em.createQuery(jpql).setParameter(memberIdsPosition, memberIds);
+        }
+
+        private static int position(Map<Object, Integer> labels, Param<?> param) {
+            Integer label = labels.get(param);
+            return label != null ? label : 0;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.Constant;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Operator;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.Expressions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * QuerydslPredicateExecutor 로 들어온 Predicate 를 같은 뜻이면 같은 모양이 되도록 정리하고, 너무 큰 조건은 막는다.
+ * <p>
+ * 모양이 같으면 JPQL 문자열이 같아져서 Hibernate 쿼리 플랜 캐시를 같이 쓴다. 정리 규칙은
+ * and/or 를 펼쳐서 중복을 빼고 정렬, 같은 경로의 eq 를 or 로 묶은 건 in 으로, true/false 상수는 접기,
+ * not(not x) 는 x, 상수 = 경로는 경로 = 상수로 뒤집기, in 값은 정렬하고 중복을 뺀다.
+ * 정리한 뒤에도 노드 수나 바인딩 값 수가 한도를 넘으면 IllegalArgumentException 을 던진다.
+ * <p>
+ * 정리는 재귀로 돌기 때문에 들어온 그대로의 깊이와 노드 수를 먼저 반복문으로 재서 너무 깊거나 크면 정리 전에 거절한다.
+ */
+@Component
+public class PredicateGuard {
+
+    private static final Predicate TRUE = Expressions.TRUE.isTrue();
+    private static final Predicate FALSE = Expressions.FALSE.isTrue();
+
+    private final int maxNodes;
+    private final int maxParameters;
+    private final int maxDepth;
+    private final int maxInputNodes;
+
+    public PredicateGuard(@Value("${member.predicate.max-nodes:200}") int maxNodes,
+                          @Value("${member.predicate.max-parameters:1000}") int maxParameters,
+                          @Value("${member.predicate.max-depth:100}") int maxDepth,
+                          @Value("${member.predicate.max-input-nodes:10000}") int maxInputNodes) {
+        this.maxNodes = maxNodes;
+        this.maxParameters = maxParameters;
+        this.maxDepth = maxDepth;
+        this.maxInputNodes = maxInputNodes;
+    }
+
+    /**
+     * @return 정리한 조건. 항상 참이면 {@link #isAlwaysTrue}, 항상 거짓이면 {@link #isAlwaysFalse} 인 값
+     */
+    public Predicate canonicalize(Predicate predicate) {
+        Cost input = measure(predicate, maxInputNodes);
+        if (input.depth > maxDepth) {
+            throw new IllegalArgumentException("조건이 너무 깊습니다. depth=" + input.depth + " max=" + maxDepth);
+        }
+        if (input.nodes > maxInputNodes) {
+            throw new IllegalArgumentException("조건이 너무 큽니다. nodes>" + maxInputNodes + " (정리 전)");
+        }
+
+        Expression<?> normalized = normalize(ExpressionUtils.extract(predicate));
+        if (normalized == null || isConstant(normalized, true)) {
+            return TRUE;
+        }
+        if (isConstant(normalized, false)) {
+            return FALSE;
+        }
+
+        Cost cost = measure(normalized, Integer.MAX_VALUE);
+        if (cost.nodes > maxNodes) {
+            throw new IllegalArgumentException("조건이 너무 큽니다. nodes=" + cost.nodes + " max=" + maxNodes);
+        }
+        if (cost.parameters > maxParameters) {
+            throw new IllegalArgumentException("바인딩 값이 너무 많습니다. parameters=" + cost.parameters + " max=" + maxParameters);
+        }
+        return (Predicate) normalized;
+    }
+
+    public boolean isAlwaysTrue(Predicate predicate) {
+        return predicate == TRUE;
+    }
+
+    public boolean isAlwaysFalse(Predicate predicate) {
+        return predicate == FALSE;
+    }
+
+    private Expression<?> normalize(Expression<?> expression) {
+        expression = ExpressionUtils.extract(expression);
+        if (!(expression instanceof Operation)) {
+            return expression;
+        }
+        Operation<?> operation = (Operation<?>) expression;
+        Operator operator = operation.getOperator();
+        if (operator == Ops.AND || operator == Ops.OR) {
+            return normalizeJunction(operation);
+        }
+
+        List<Expression<?>> args = new ArrayList<>();
+        for (Expression<?> arg : operation.getArgs()) {
+            args.add(normalize(arg));
+        }
+
+        if (operator == Ops.NOT) {
+            Expression<?> inner = args.get(0);
+            if (inner instanceof Constant && ((Constant<?>) inner).getConstant() instanceof Boolean) {
+                return Expressions.constant(!((Boolean) ((Constant<?>) inner).getConstant()));
+            }
+            if (inner instanceof Operation && ((Operation<?>) inner).getOperator() == Ops.NOT) {
+                return ((Operation<?>) inner).getArg(0);
+            }
+        }
+        if (operator == Ops.EQ || operator == Ops.NE) {
+            Expression<?> left = args.get(0);
+            Expression<?> right = args.get(1);
+            if (left instanceof Constant && right instanceof Constant) {
+                boolean equal = Objects.equals(((Constant<?>) left).getConstant(), ((Constant<?>) right).getConstant());
+                return Expressions.constant(operator == Ops.EQ == equal);
+            }
+            if (left instanceof Constant && !(right instanceof Constant)) {
+                return ExpressionUtils.predicate(operator, right, left);
+            }
+        }
+        if (operator == Ops.IN && args.get(1) instanceof Constant
+                && ((Constant<?>) args.get(1)).getConstant() instanceof Collection) {
+            return normalizeIn(args.get(0), (Collection<?>) ((Constant<?>) args.get(1)).getConstant());
+        }
+
+        if (operation.getType() == Boolean.class) {
+            return ExpressionUtils.predicate(operator, args.toArray(new Expression<?>[0]));
+        }
+        return ExpressionUtils.operation(operation.getType(), operator, args.toArray(new Expression<?>[0]));
+    }
+
+    private Expression<?> normalizeJunction(Operation<?> operation) {
+        Operator operator = operation.getOperator();
+        boolean and = operator == Ops.AND;
+
+        List<Expression<?>> flat = new ArrayList<>();
+        flatten(operation, operator, flat);
+
+        //모양 → 식. 같은 모양은 하나만 남기고 모양 순으로 정렬한다.
+        Map<String, Expression<?>> unique = new LinkedHashMap<>();
+        //or 안의 같은 경로 eq/in 은 in 하나로 모은다.
+        Map<Expression<?>, List<Object>> inValues = new LinkedHashMap<>();
+        for (Expression<?> arg : flat) {
+            Expression<?> normalized = normalize(arg);
+            if (normalized == null || isConstant(normalized, and)) {
+                continue;
+            }
+            if (isConstant(normalized, !and)) {
+                return Expressions.constant(!and);
+            }
+            if (!and && collectIn(normalized, inValues)) {
+                continue;
+            }
+            unique.putIfAbsent(normalized.toString(), normalized);
+        }
+        inValues.forEach((path, values) -> {
+            Expression<?> in = normalizeIn(path, values);
+            unique.putIfAbsent(in.toString(), in);
+        });
+
+        List<Expression<?>> args = new ArrayList<>(unique.values());
+        if (args.isEmpty()) {
+            return Expressions.constant(and);
+        }
+        args.sort(Comparator.comparing(PredicateGuard::shapeOf).thenComparing(Expression::toString));
+        Predicate result = (Predicate) args.get(0);
+        for (int i = 1; i < args.size(); i++) {
+            result = ExpressionUtils.predicate(operator, result, args.get(i));
+        }
+        return result;
+    }
+
+    private static void flatten(Expression<?> expression, Operator operator, List<Expression<?>> out) {
+        Expression<?> extracted = ExpressionUtils.extract(expression);
+        if (extracted instanceof Operation && ((Operation<?>) extracted).getOperator() == operator) {
+            for (Expression<?> arg : ((Operation<?>) extracted).getArgs()) {
+                flatten(arg, operator, out);
+            }
+        } else {
+            out.add(extracted);
+        }
+    }
+
+    //경로 = 상수, 경로 in (상수들) 이면 값을 모으고 true
+    private static boolean collectIn(Expression<?> expression, Map<Expression<?>, List<Object>> inValues) {
+        if (!(expression instanceof Operation)) {
+            return false;
+        }
+        Operation<?> operation = (Operation<?>) expression;
+        if (operation.getArgs().size() != 2 || !(operation.getArg(0) instanceof Path) || !(operation.getArg(1) instanceof Constant)) {
+            return false;
+        }
+        Object value = ((Constant<?>) operation.getArg(1)).getConstant();
+        if (operation.getOperator() == Ops.EQ) {
+            inValues.computeIfAbsent(operation.getArg(0), path -> new ArrayList<>()).add(value);
+            return true;
+        }
+        if (operation.getOperator() == Ops.IN && value instanceof Collection) {
+            inValues.computeIfAbsent(operation.getArg(0), path -> new ArrayList<>()).addAll((Collection<?>) value);
+            return true;
+        }
+        return false;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Expression<?> normalizeIn(Expression<?> path, Collection<?> values) {
+        Collection<Object> canonical;
+        //타입이 섞여 있으면 비교할 수 없으니 순서는 그대로 두고 중복만 뺀다.
+        boolean sortable = values.stream().map(value -> value == null ? null : value.getClass()).distinct().count() == 1
+                && values.iterator().next() instanceof Comparable;
+        if (sortable) {
+            canonical = new TreeSet<>((Comparator) Comparator.naturalOrder());
+            canonical.addAll(values);
+        } else {
+            canonical = new ArrayList<>(new LinkedHashSet<>(values));
+        }
+        if (canonical.isEmpty()) {
+            return Expressions.constant(false);
+        }
+        if (canonical.size() == 1) {
+            return ExpressionUtils.predicate(Ops.EQ, path, Expressions.constant(canonical.iterator().next()));
+        }
+        return ExpressionUtils.predicate(Ops.IN, path, Expressions.constant(new ArrayList<>(canonical)));
+    }
+
+    //상수 값을 뺀 모양. 값만 다른 조건끼리 정렬 순서가 흔들리지 않게 한다.
+    private static String shapeOf(Expression<?> expression) {
+        if (expression instanceof Constant) {
+            return "?";
+        }
+        if (expression instanceof Operation) {
+            Operation<?> operation = (Operation<?>) expression;
+            StringBuilder shape = new StringBuilder(operation.getOperator().name()).append('(');
+            for (Expression<?> arg : operation.getArgs()) {
+                shape.append(shapeOf(arg)).append(',');
+            }
+            return shape.append(')').toString();
+        }
+        return expression.toString();
+    }
+
+    private static boolean isConstant(Expression<?> expression, boolean value) {
+        return expression instanceof Constant && Boolean.valueOf(value).equals(((Constant<?>) expression).getConstant());
+    }
+
+    //깊이를 같이 들고 스택으로 돈다. 노드 수가 nodeLimit 을 넘으면 더 세지 않는다.
+    private static Cost measure(Expression<?> root, int nodeLimit) {
+        Cost cost = new Cost();
+        Deque<Expression<?>> expressions = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        expressions.push(root);
+        depths.push(1);
+        while (!expressions.isEmpty() && cost.nodes <= nodeLimit) {
+            Expression<?> expression = ExpressionUtils.extract(expressions.pop());
+            int depth = depths.pop();
+            cost.nodes++;
+            cost.depth = Math.max(cost.depth, depth);
+            if (expression instanceof Constant) {
+                Object value = ((Constant<?>) expression).getConstant();
+                cost.parameters += value instanceof Collection ? ((Collection<?>) value).size() : 1;
+            } else if (expression instanceof Operation) {
+                for (Expression<?> arg : ((Operation<?>) expression).getArgs()) {
+                    expressions.push(arg);
+                    depths.push(depth + 1);
+                }
+            }
+        }
+        return cost;
+    }
+
+    private static class Cost {
+
+        int nodes;
+        int parameters;
+        int depth;
+    }
+}
@@ -0,0 +1,65 @@
+package study.querydsl.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 조회 쿼리를 별도 스레드에서 실행한다. 작업마다 읽기 전용 트랜잭션을 새로 열기 때문에
+ * 영속성 컨텍스트와 커넥션이 호출한 쪽과 분리된다.
+ * 스레드 수는 작업이 실제로 쓰는 커넥션 풀(레플리카가 있으면 레플리카) 크기에 맞춰 제한하고, 큐가 가득 차면 RejectedExecutionException 을 던진다.
+ */
+@Component
+public class ReadOnlyQueryExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final TransactionTemplate readOnlyTx;
+    private final Duration timeout;
+
+    public ReadOnlyQueryExecutor(PlatformTransactionManager transactionManager,
+                                 @Value("${member.parallel-query.threads:0}") int threads,
+                                 @Value("${member.datasource.replicas[0].hikari.maximum-pool-size:${spring.datasource.hikari.maximum-pool-size:10}}") int poolSize,
+                                 @Value("${member.parallel-query.queue-size:50}") int queueSize,
+                                 @Value("${member.parallel-query.timeout:5s}") Duration timeout) {
+        this.timeout = timeout;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        readOnlyTx.setReadOnly(true);
+        readOnlyTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        //트랜잭션 타임아웃은 쿼리 타임아웃으로도 걸려서 느린 쿼리는 DB 에서 끊긴다.
+        readOnlyTx.setTimeout((int) Math.max(1, timeout.toSeconds()));
+
+        //요청 하나가 작업 둘을 쓰므로 지정하지 않으면 풀의 절반만 쓰고, 지정해도 풀보다 크게 잡지 않는다.
+        threads = threads > 0 ? Math.min(threads, poolSize) : Math.max(1, poolSize / 2);
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "read-only-query-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public <T> Future<T> submit(Supplier<T> query) {
+        return executor.submit(() -> readOnlyTx.execute(status -> query.get()));
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
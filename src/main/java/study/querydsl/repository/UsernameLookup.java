@@ -0,0 +1,44 @@
+package study.querydsl.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Session;
+import org.springframework.stereotype.Component;
+import study.querydsl.cache.UsernameIndex;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 이름 인덱스로 회원을 찾는다. 없는 이름은 DB 에 가지 않고, 있는 이름은 pk 로 읽는다.
+ * 인덱스는 커밋 뒤에 반영되므로 읽어 온 회원의 이름이 다르거나(이름 변경 중) 회원이 없으면(삭제 중) 인덱스를 믿지 않는다.
+ */
+@Component
+@RequiredArgsConstructor
+public class UsernameLookup {
+
+    private final EntityManager em;
+    private final UsernameIndex usernameIndex;
+
+    /**
+     * @return 인덱스를 쓸 수 없거나 인덱스가 DB 와 어긋나 있으면 null. 호출한 쪽이 DB 에서 찾는다.
+     */
+    public List<Member> find(String username) {
+        if (!usernameIndex.isUsable()) {
+            return null;
+        }
+        List<Long> ids = usernameIndex.idsOf(username);
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        //영속성 컨텍스트에 있는 건 그대로 쓰고 나머지만 한 번에 읽는다.
+        List<Member> members = em.unwrap(Session.class).byMultipleIds(Member.class).multiLoad(ids);
+        for (Member found : members) {
+            if (found == null || !username.equals(found.getUsername())) {
+                return null;
+            }
+        }
+        return members;
+    }
+}
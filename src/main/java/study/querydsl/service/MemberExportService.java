@@ -0,0 +1,62 @@
+package study.querydsl.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberRepository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * 검색 결과를 NDJSON(한 줄에 json 하나)으로 내려보낸다.
+ * 커서로 읽으면서 바로 쓰기 때문에 결과 건수와 상관없이 메모리 사용량이 일정하다.
+ */
+@Service
+@RequiredArgsConstructor
+public class MemberExportService {
+
+    private final MemberRepository memberRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${member.export.flush-size:1000}")
+    private int flushSize;
+
+    @Transactional(readOnly = true)
+    public long export(MemberSearchCondition condition, OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.setRootValueSeparator(new SerializedString("\n"));
+        //한 건마다 flush 하지 않도록 끈다.
+        ObjectWriter writer = objectMapper.writerFor(MemberTeamDto.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        long count = 0;
+        try (Stream<MemberTeamDto> stream = memberRepository.streamSearch(condition)) {
+            Iterator<MemberTeamDto> rows = stream.iterator();
+            while (rows.hasNext()) {
+                writer.writeValue(generator, rows.next());
+                count++;
+
+                //첫 줄은 바로 내보내고, 이후에는 청크 단위로 밀어낸다.
+                if (count == 1 || count % flushSize == 0) {
+                    generator.flush();
+                }
+            }
+        }
+        if (count > 0) {
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+        return count;
+    }
+}
@@ -0,0 +1,112 @@
+package study.querydsl.service;
+
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberIngestRow;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.event.BulkChangedEvent;
+import study.querydsl.event.EntityChangeListener;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 회원을 대량으로 저장한다.
+ * chunk-size 건마다 트랜잭션을 커밋하고 영속성 컨텍스트를 비우므로 입력 크기와 상관없이 메모리 사용량이 일정하다.
+ * insert 는 JDBC 배치로 묶이고, id 는 시퀀스에서 블록 단위(pooled-lo)로 받아 온다.
+ * 중간에 실패하면 그 청크만 롤백되고 이전 청크는 커밋된 채로 남는다.
+ */
+@Service
+public class MemberIngestService {
+
+    private final EntityManager em;
+    private final TransactionTemplate tx;
+    private final ApplicationEventPublisher publisher;
+    private final int chunkSize;
+    private final int batchSize;
+
+    public MemberIngestService(EntityManager em,
+                               PlatformTransactionManager transactionManager,
+                               ApplicationEventPublisher publisher,
+                               @Value("${member.ingest.chunk-size:1000}") int chunkSize,
+                               @Value("${member.ingest.batch-size:100}") int batchSize) {
+        this.em = em;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.publisher = publisher;
+        this.chunkSize = chunkSize;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return 저장한 회원 수
+     */
+    public long ingest(Iterable<MemberIngestRow> rows) {
+        Map<String, Long> teamIds = loadTeamIds();
+
+        long total = 0;
+        Iterator<MemberIngestRow> iterator = rows.iterator();
+        List<MemberIngestRow> chunk = new ArrayList<>(chunkSize);
+        while (iterator.hasNext()) {
+            chunk.add(iterator.next());
+            if (chunk.size() == chunkSize || !iterator.hasNext()) {
+                List<MemberIngestRow> current = chunk;
+                Map<String, Long> createdTeamIds = tx.execute(status -> EntityChangeListener.withoutRowEvents(() -> saveChunk(current, teamIds)));
+                //커밋된 뒤에만 다음 청크에서 새 팀을 재사용한다.
+                teamIds.putAll(createdTeamIds);
+                total += chunk.size();
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        return total;
+    }
+
+    //팀 수는 적으므로 이름 -> id 를 미리 다 읽어 둔다. 같은 이름이 여럿이면 먼저 만든 팀을 쓴다.
+    private Map<String, Long> loadTeamIds() {
+        return tx.execute(status -> {
+            Map<String, Long> teamIds = new HashMap<>();
+            List<Object[]> teams = em.createQuery("select t.name, t.id from Team t order by t.id", Object[].class).getResultList();
+            for (Object[] team : teams) {
+                teamIds.putIfAbsent((String) team[0], (Long) team[1]);
+            }
+            return teamIds;
+        });
+    }
+
+    //이번 청크에서 새로 만든 팀의 이름 -> id 를 돌려준다.
+    private Map<String, Long> saveChunk(List<MemberIngestRow> chunk, Map<String, Long> teamIds) {
+        em.unwrap(Session.class).setJdbcBatchSize(batchSize);
+
+        Map<String, Long> newTeamIds = new HashMap<>();
+        for (MemberIngestRow row : chunk) {
+            Long teamId = teamIds.get(row.getTeamName());
+            if (teamId == null) {
+                teamId = newTeamIds.get(row.getTeamName());
+            }
+            if (teamId == null) {
+                Team team = new Team(row.getTeamName());
+                em.persist(team);
+                teamId = team.getId();
+                newTeamIds.put(row.getTeamName(), teamId);
+            }
+            //팀은 select 없이 id 만 가진 프록시로 건다.
+            em.persist(new Member(row.getUsername(), row.getAge(), em.getReference(Team.class, teamId)));
+        }
+        em.flush();
+        em.clear();
+
+        if (!newTeamIds.isEmpty()) {
+            publisher.publishEvent(new BulkChangedEvent(Team.class, newTeamIds.size()));
+        }
+        publisher.publishEvent(new BulkChangedEvent(Member.class, chunk.size()));
+        return newTeamIds;
+    }
+}
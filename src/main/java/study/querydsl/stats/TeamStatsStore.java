@@ -0,0 +1,240 @@
+package study.querydsl.stats;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import study.querydsl.cache.IndexReloader;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.event.BulkChangedEvent;
+import study.querydsl.event.BulkFinishedEvent;
+import study.querydsl.event.ChangeType;
+import study.querydsl.event.MemberChangedEvent;
+import study.querydsl.event.MemberSnapshot;
+import study.querydsl.event.TeamChangedEvent;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 팀별 회원 수, 나이 합/최소/최대를 메모리에 들고 있다가 커밋된 변경 이벤트로 조금씩 고친다.
+ * 조회는 회원 테이블을 스캔하지 않고 팀 수만큼만 돈다.
+ * <p>
+ * 나이별 인원수를 같이 들고 있어서 최소/최대인 회원이 빠져도 다시 계산하지 않는다.
+ * 벌크 연산처럼 어떤 row 가 바뀌었는지 모르는 변경이 오면 DB 에서 다시 집계하고,
+ * 혹시 놓친 변경이 있어도 reconcile-interval 마다 다시 집계해서 맞춘다.
+ */
+@Slf4j
+@Component
+public class TeamStatsStore {
+
+    private final EntityManagerFactory emf;
+    private final boolean enabled;
+    private final IndexReloader<Map<Long, TeamAccumulator>> reloader;
+
+    //reloader 의 lock 으로 보호한다.
+    private Map<Long, TeamAccumulator> teams;
+
+    public TeamStatsStore(EntityManagerFactory emf,
+                          @Value("${member.team-stats.enabled:true}") boolean enabled) {
+        this.emf = emf;
+        this.enabled = enabled;
+        //나이별 인원수를 더하고 빼므로 같은 변경을 두 번 적용하면 안 된다. 집계하는 동안 변경이 있었으면 한 번 더 집계한다.
+        this.reloader = new IndexReloader<>("팀 통계", "team-stats-reconcile", false,
+                this::aggregateFromDb, this::install, this::apply);
+    }
+
+    /**
+     * 아직 로딩 전이거나 꺼져 있으면 DB 에서 바로 집계한다.
+     */
+    public List<TeamStatsDto> stats() {
+        List<TeamStatsDto> loaded = reloader.read(() -> teams != null ? toDtos(teams) : null);
+        return loaded != null ? loaded : toDtos(aggregateFromDb());
+    }
+
+    //다른 빈의 초기화(초기 데이터 등)가 끝난 뒤에 읽는다.
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcile() {
+        if (enabled) {
+            reloader.reload();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${member.team-stats.reconcile-interval:PT5M}",
+            initialDelayString = "${member.team-stats.reconcile-interval:PT5M}")
+    public void scheduledReconcile() {
+        reconcile();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMemberChanged(MemberChangedEvent event) {
+        if (enabled) {
+            reloader.onChanged(event);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTeamChanged(TeamChangedEvent event) {
+        if (enabled) {
+            reloader.onChanged(event);
+        }
+    }
+
+    //통계는 조금 어긋나도 쓰므로 막지 않고 커밋된 뒤에 다시 집계만 한다.
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBulkChanged(BulkChangedEvent event) {
+        if (enabled && (event.getEntityType() == Member.class || event.getEntityType() == Team.class)) {
+            reloader.queueReload();
+        }
+    }
+
+    @EventListener
+    public void onBulkFinished(BulkFinishedEvent event) {
+        if (enabled && (event.getEntityType() == Member.class || event.getEntityType() == Team.class)) {
+            reloader.queueReload();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloader.shutdown();
+    }
+
+    private void install(Map<Long, TeamAccumulator> fresh) {
+        if (teams != null) {
+            Set<Long> teamIds = new HashSet<>(fresh.keySet());
+            teamIds.addAll(teams.keySet());
+            long drifted = teamIds.stream()
+                    .filter(teamId -> !Objects.equals(toDto(teamId, fresh.get(teamId)), toDto(teamId, teams.get(teamId))))
+                    .count();
+            if (drifted > 0) {
+                log.info("팀 통계 보정 teams={} drifted={}", fresh.size(), drifted);
+            }
+        }
+        teams = fresh;
+    }
+
+    private void apply(Object event) {
+        if (event instanceof MemberChangedEvent) {
+            MemberChangedEvent changed = (MemberChangedEvent) event;
+            //준영속 update 처럼 이전 값을 모르면 어디서 빼야 할지 모르므로 다시 집계한다.
+            if (changed.getType() == ChangeType.UPDATE && changed.getBefore() == null) {
+                reloader.queueReload();
+            }
+            remove(changed.getBefore());
+            add(changed.getAfter());
+        } else {
+            TeamChangedEvent changed = (TeamChangedEvent) event;
+            if (changed.getType() == ChangeType.DELETE) {
+                teams.remove(changed.getTeamId());
+            } else {
+                teams.computeIfAbsent(changed.getTeamId(), id -> new TeamAccumulator()).name = changed.getAfterName();
+            }
+        }
+    }
+
+    private void add(MemberSnapshot snapshot) {
+        if (snapshot == null || snapshot.getTeamId() == null) {
+            return;
+        }
+        teams.computeIfAbsent(snapshot.getTeamId(), id -> new TeamAccumulator()).add(snapshot.getAge());
+    }
+
+    private void remove(MemberSnapshot snapshot) {
+        if (snapshot == null || snapshot.getTeamId() == null) {
+            return;
+        }
+        TeamAccumulator accumulator = teams.get(snapshot.getTeamId());
+        if (accumulator == null || !accumulator.remove(snapshot.getAge())) {
+            //없는 값을 빼라는 건 이미 어긋났다는 뜻
+            reloader.queueReload();
+        }
+    }
+
+    private Map<Long, TeamAccumulator> aggregateFromDb() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            Map<Long, TeamAccumulator> result = new HashMap<>();
+            for (Object[] row : em.createQuery("select t.id, t.name from Team t", Object[].class).getResultList()) {
+                result.computeIfAbsent((Long) row[0], id -> new TeamAccumulator()).name = (String) row[1];
+            }
+            //팀, 나이별 인원수. 결과 크기는 팀 수 x 나이 종류로 작다.
+            List<Object[]> rows = em.createQuery(
+                    "select m.team.id, m.age, count(m) from Member m where m.team is not null group by m.team.id, m.age",
+                    Object[].class).getResultList();
+            for (Object[] row : rows) {
+                result.computeIfAbsent((Long) row[0], id -> new TeamAccumulator())
+                        .add((Integer) row[1], (Long) row[2]);
+            }
+            return result;
+        } finally {
+            em.close();
+        }
+    }
+
+    private static List<TeamStatsDto> toDtos(Map<Long, TeamAccumulator> teams) {
+        List<TeamStatsDto> result = new ArrayList<>(teams.size());
+        teams.forEach((teamId, accumulator) -> result.add(toDto(teamId, accumulator)));
+        result.sort(Comparator.comparing(TeamStatsDto::getTeamId));
+        return result;
+    }
+
+    private static TeamStatsDto toDto(Long teamId, TeamAccumulator accumulator) {
+        if (accumulator == null) {
+            return null;
+        }
+        boolean empty = accumulator.ageCounts.isEmpty();
+        return new TeamStatsDto(teamId, accumulator.name, accumulator.count, accumulator.ageSum,
+                empty ? null : accumulator.ageCounts.firstKey(),
+                empty ? null : accumulator.ageCounts.lastKey());
+    }
+
+    private static class TeamAccumulator {
+
+        String name;
+        long count;
+        long ageSum;
+        //나이 -> 인원수. 최소/최대는 양 끝 key
+        final TreeMap<Integer, Long> ageCounts = new TreeMap<>();
+
+        void add(int age) {
+            add(age, 1);
+        }
+
+        void add(int age, long members) {
+            count += members;
+            ageSum += (long) age * members;
+            ageCounts.merge(age, members, Long::sum);
+        }
+
+        boolean remove(int age) {
+            Long members = ageCounts.get(age);
+            if (members == null) {
+                return false;
+            }
+            if (members == 1) {
+                ageCounts.remove(age);
+            } else {
+                ageCounts.put(age, members - 1);
+            }
+            count--;
+            ageSum -= age;
+            return true;
+        }
+    }
+}
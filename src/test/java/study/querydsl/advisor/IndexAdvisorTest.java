@@ -0,0 +1,129 @@
+package study.querydsl.advisor;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.IndexRecommendation;
+import study.querydsl.dto.MemberIngestRow;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.service.MemberIngestService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+//H2 에 데이터를 채우고 같은 워크로드를 인덱스 적용 전/후로 돌려 본다. 커밋된 데이터가 필요해서 직접 지운다.
+@Slf4j
+@SpringBootTest(properties = "member.index-advisor.enabled=true")
+class IndexAdvisorTest {
+
+    static final int MEMBERS = 20000;
+    static final int TEAMS = 20;
+
+    @Autowired
+    IndexAdvisor indexAdvisor;
+    @Autowired
+    MemberIngestService memberIngestService;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    TransactionTemplate tx;
+
+    List<IndexRecommendation> applied = new ArrayList<>();
+
+    @BeforeEach
+    void before() {
+        List<MemberIngestRow> rows = new ArrayList<>();
+        for (int i = 0; i < MEMBERS; i++) {
+            rows.add(new MemberIngestRow("advisor" + i, i % 60, "advisorTeam" + (i % TEAMS)));
+        }
+        memberIngestService.ingest(rows);
+        indexAdvisor.reset();
+    }
+
+    @AfterEach
+    void after() {
+        applied.forEach(recommendation -> jdbcTemplate.execute("drop index if exists idx_" + recommendation.getTable()
+                + "_" + String.join("_", recommendation.getColumns())));
+        tx.executeWithoutResult(status -> {
+            List<Long> teamIds = queryFactory.select(team.id).from(team).where(team.name.startsWith("advisorTeam")).fetch();
+            queryFactory.delete(member).where(member.team.id.in(teamIds)).execute();
+            queryFactory.delete(team).where(team.id.in(teamIds)).execute();
+        });
+        indexAdvisor.reset();
+    }
+
+    @Test
+    void recommendAndCompare() {
+        long before = runWorkload();
+
+        List<IndexRecommendation> recommendations = indexAdvisor.recommend(5);
+        log.info("recommendations={}", recommendations);
+        //팀 + 나이 범위 조건과 팀 + 나이 정렬은 (team_id, age) 하나로 합쳐진다.
+        assertThat(recommendations).extracting("table", "columns")
+                .contains(tuple("member", List.of("team_id", "age")));
+        //이름 조건은 이미 idx_member_username 이 있어서 추천하지 않는다.
+        assertThat(recommendations).extracting("columns").doesNotContain(List.of("username"));
+
+        String planBefore = explain();
+        recommendations.forEach(recommendation -> jdbcTemplate.execute(recommendation.getDdl()));
+        applied.addAll(recommendations);
+        String planAfter = explain();
+
+        indexAdvisor.reset();
+        long after = runWorkload();
+        log.info("workload before={}ms after={}ms", before / 1_000_000, after / 1_000_000);
+        log.info("plan before={} after={}", planBefore, planAfter);
+
+        assertThat(planBefore.toLowerCase()).doesNotContain("idx_member_team_id_age");
+        assertThat(planAfter.toLowerCase()).contains("idx_member_team_id_age");
+        //만든 인덱스는 다시 추천하지 않는다.
+        assertThat(indexAdvisor.recommend(5)).extracting("columns").doesNotContain(List.of("team_id", "age"));
+    }
+
+    private long runWorkload() {
+        long start = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            memberJpaRepository.search(condition(null, "advisorTeam" + (i % TEAMS), 20, 25));
+            memberRepository.searchPageSimple(condition(null, "advisorTeam" + (i % TEAMS), null, null),
+                    PageRequest.of(0, 20, Sort.by("age")));
+            memberJpaRepository.search(condition("advisor" + i, null, null, null));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private String explain() {
+        Long teamId = queryFactory.select(team.id).from(team).where(team.name.eq("advisorTeam3")).fetchFirst();
+        return String.join("\n", jdbcTemplate.queryForList(
+                "explain select * from member where team_id = " + teamId + " and age between 20 and 25", String.class));
+    }
+
+    private MemberSearchCondition condition(String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
@@ -0,0 +1,173 @@
+package study.querydsl.cache;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+//인덱스는 커밋된 변경만 반영하므로 테스트 트랜잭션 없이 직접 커밋한다.
+@SpringBootTest(properties = "member.bitmap-index.enabled=true")
+class MemberBitmapIndexTest {
+
+    @Autowired
+    MemberBitmapIndex bitmapIndex;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate tx;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    Team bitmapTeam;
+
+    @BeforeEach
+    void before() throws InterruptedException {
+        bitmapTeam = tx.execute(status -> {
+            Team team = new Team("bitmapTeam");
+            em.persist(team);
+            for (int i = 0; i < 10; i++) {
+                em.persist(new Member("bitmap" + i, 10 + i, team));
+            }
+            return team;
+        });
+        //앞 테스트의 벌크 삭제 뒤 재로딩을 기다린다.
+        awaitUsable(condition("bitmapTeam", null, null));
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            queryFactory.delete(member).where(member.team.id.eq(bitmapTeam.getId())).execute();
+            queryFactory.delete(team).where(team.id.eq(bitmapTeam.getId())).execute();
+        });
+    }
+
+    @Test
+    void countAndPageMatchDatabase() {
+        for (MemberSearchCondition condition : new MemberSearchCondition[]{
+                condition("bitmapTeam", null, null),
+                condition("bitmapTeam", 12, 16),
+                condition("bitmapTeam", 15, null),
+                condition("bitmapTeam", 30, null)}) {
+            MemberSearchKey key = MemberSearchKey.of(condition);
+            assertThat(bitmapIndex.isUsable(key)).isTrue();
+
+            PageRequest pageable = PageRequest.of(1, 3);
+            Page<MemberTeamDto> page = memberRepository.searchPageComplex(condition, pageable);
+            List<MemberTeamDto> expected = memberJpaRepository.search(condition).stream()
+                    .sorted(Comparator.comparing(MemberTeamDto::getMemberId))
+                    .skip(pageable.getOffset())
+                    .limit(pageable.getPageSize())
+                    .collect(Collectors.toList());
+            assertThat(page.getTotalElements()).isEqualTo(memberJpaRepository.search(condition).size());
+            assertThat(page.getContent()).containsExactlyElementsOf(expected);
+        }
+    }
+
+    @Test
+    void sortedPageUsesDatabaseContent() {
+        MemberSearchCondition condition = condition("bitmapTeam", 11, null);
+
+        Page<MemberTeamDto> page = memberRepository.searchPageComplex(condition, PageRequest.of(0, 3, Sort.by(Sort.Order.desc("age"))));
+
+        assertThat(page.getTotalElements()).isEqualTo(9);
+        assertThat(page.getContent()).extracting("age").containsExactly(19, 18, 17);
+    }
+
+    @Test
+    void changesAreApplied() {
+        MemberSearchKey key = MemberSearchKey.of(condition("bitmapTeam", 19, null));
+        assertThat(bitmapIndex.count(key)).isEqualTo(1);
+
+        tx.executeWithoutResult(status -> {
+            Team found = em.find(Team.class, bitmapTeam.getId());
+            em.persist(new Member("bitmapNew", 30, found));
+            queryFactory.selectFrom(member).where(member.team.id.eq(found.getId()), member.age.eq(19)).fetchOne().setAge(5);
+            queryFactory.selectFrom(member).where(member.team.id.eq(found.getId()), member.age.eq(10)).fetchOne().setAge(25);
+        });
+
+        assertThat(bitmapIndex.count(key)).isEqualTo(2);
+        assertThat(bitmapIndex.pageIds(key, 0, 10)).hasSize(2).isSorted();
+        assertThat(bitmapIndex.count(MemberSearchKey.of(condition("bitmapTeam", null, 9)))).isEqualTo(1);
+    }
+
+    @Test
+    void bulkChangeMakesIndexStaleUntilReload() throws InterruptedException {
+        MemberSearchCondition condition = condition("bitmapTeam", 40, null);
+        tx.executeWithoutResult(status -> queryFactory.update(member)
+                .set(member.age, 40)
+                .where(member.team.id.eq(bitmapTeam.getId()))
+                .execute());
+        assertThat(memberRepository.searchPageComplex(condition, PageRequest.of(0, 5)).getTotalElements()).isEqualTo(10);
+
+        awaitUsable(condition);
+        assertThat(bitmapIndex.count(MemberSearchKey.of(condition))).isEqualTo(10);
+    }
+
+    //팀 사전이 모르는 팀은 total 0 이 아니라 DB 에서 센다.
+    @Test
+    void teamUnknownToDictionaryGoesToDatabase() {
+        tx.executeWithoutResult(status -> {
+            jdbcTemplate.update("insert into team (team_id, name) values (?, ?)", 900_002L, "sqlBitmapTeam");
+            jdbcTemplate.update("insert into member (member_id, username, age, team_id) values (?, ?, ?, ?)", 900_002L, "sqlBitmap", 20, 900_002L);
+        });
+        try {
+            MemberSearchCondition condition = condition("sqlBitmapTeam", null, null);
+            assertThat(bitmapIndex.isUsable(MemberSearchKey.of(condition))).isFalse();
+
+            Page<MemberTeamDto> page = memberRepository.searchPageComplex(condition, PageRequest.of(0, 5));
+            assertThat(page.getTotalElements()).isEqualTo(1);
+            assertThat(page.getContent()).extracting("username").containsExactly("sqlBitmap");
+        } finally {
+            tx.executeWithoutResult(status -> {
+                jdbcTemplate.update("delete from member where member_id = ?", 900_002L);
+                jdbcTemplate.update("delete from team where team_id = ?", 900_002L);
+            });
+        }
+    }
+
+    private void awaitUsable(MemberSearchCondition condition) throws InterruptedException {
+        MemberSearchKey key = MemberSearchKey.of(condition);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!bitmapIndex.isUsable(key) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(bitmapIndex.isUsable(key)).isTrue();
+    }
+
+    private MemberSearchCondition condition(String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
@@ -0,0 +1,185 @@
+package study.querydsl.cache;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.event.BulkChangedEvent;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+//인덱스는 커밋된 변경만 반영하므로 테스트 트랜잭션 없이 직접 커밋한다.
+@SpringBootTest(properties = "member.search.engine=columnar")
+class MemberColumnarIndexTest {
+
+    @Autowired
+    MemberColumnarIndex columnarIndex;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate tx;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    ApplicationEventPublisher publisher;
+
+    Team columnarTeam;
+
+    @BeforeEach
+    void before() {
+        columnarTeam = tx.execute(status -> {
+            Team team = new Team("columnarTeam");
+            em.persist(team);
+            for (int i = 0; i < 10; i++) {
+                em.persist(new Member("columnar" + (i % 5), 10 + i, team));
+            }
+            return team;
+        });
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            queryFactory.delete(member).where(member.team.id.eq(columnarTeam.getId())).execute();
+            queryFactory.delete(team).where(team.id.eq(columnarTeam.getId())).execute();
+        });
+    }
+
+    @Test
+    void sameResultAsDatabase() throws InterruptedException {
+        //앞 테스트의 @AfterEach 벌크 삭제로 다시 읽는 중일 수 있다.
+        awaitUsable();
+
+        for (MemberSearchCondition condition : new MemberSearchCondition[]{
+                condition(null, "columnarTeam", null, null),
+                condition("columnar1", "columnarTeam", null, null),
+                condition(null, "columnarTeam", 12, 16),
+                condition("columnar3", "columnarTeam", 15, null),
+                condition("noSuchMember", "columnarTeam", null, null)}) {
+            assertThat(memberRepository.search(condition))
+                    .containsExactlyInAnyOrderElementsOf(memberJpaRepository.search(condition));
+        }
+    }
+
+    @Test
+    void pagingAndSort() {
+        MemberSearchCondition condition = condition(null, "columnarTeam", null, null);
+
+        Page<MemberTeamDto> page = memberRepository.searchPageComplex(condition,
+                PageRequest.of(1, 3, Sort.by(Sort.Order.asc("username"), Sort.Order.desc("age"))));
+
+        assertThat(page.getTotalElements()).isEqualTo(10);
+        assertThat(page.getContent()).extracting("username", "age")
+                .containsExactly(tuple("columnar1", 11), tuple("columnar2", 17), tuple("columnar2", 12));
+
+        //모르는 정렬 속성은 DB 검색처럼 무시한다.
+        Page<MemberTeamDto> unknown = memberRepository.searchPageComplex(condition,
+                PageRequest.of(1, 3, Sort.by(Sort.Order.asc("password"), Sort.Order.asc("username"), Sort.Order.desc("age"))));
+        assertThat(unknown.getContent()).containsExactlyElementsOf(page.getContent());
+    }
+
+    @Test
+    void changesAreApplied() throws InterruptedException {
+        MemberSearchCondition condition = condition(null, "columnarTeam", 19, null);
+
+        tx.executeWithoutResult(status -> {
+            Team found = em.find(Team.class, columnarTeam.getId());
+            em.persist(new Member("columnarNew", 30, found));
+            queryFactory.selectFrom(member).where(member.team.id.eq(found.getId()), member.age.eq(19)).fetchOne().setAge(5);
+        });
+        assertThat(memberRepository.search(condition)).extracting("username").containsExactly("columnarNew");
+
+        //벌크 연산 뒤에는 다시 읽을 때까지 DB 로 간다.
+        tx.executeWithoutResult(status -> queryFactory.update(member)
+                .set(member.age, 40)
+                .where(member.team.id.eq(columnarTeam.getId()))
+                .execute());
+        assertThat(memberRepository.search(condition)).hasSize(11);
+
+        awaitUsable();
+        assertThat(memberRepository.search(condition)).hasSize(11);
+    }
+
+    @Test
+    void reloadDuringBulkChangeStaysStale() throws InterruptedException {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readOnly.executeWithoutResult(status -> {
+            publisher.publishEvent(new BulkChangedEvent(Member.class, 0));
+            //벌크 트랜잭션이 끝나기 전에 읽은 결과로는 stale 을 풀지 않는다.
+            columnarIndex.reload();
+            assertThat(columnarIndex.isUsable(key(null))).isFalse();
+        });
+
+        awaitUsable();
+    }
+
+    @Test
+    void teamUnknownToIndexGoesToDatabase() {
+        //SQL 로 넣으면 이벤트가 없어서 인덱스는 이 팀을 모른다.
+        tx.executeWithoutResult(status -> {
+            jdbcTemplate.update("insert into team (team_id, name) values (?, ?)", 900_003L, "columnarSqlTeam");
+            jdbcTemplate.update("insert into member (member_id, username, age, team_id) values (?, ?, ?, ?)",
+                    900_003L, "columnarSqlMember", 20, 900_003L);
+        });
+        try {
+            assertThat(columnarIndex.isUsable(key("columnarSqlTeam"))).isFalse();
+            assertThat(memberRepository.search(condition(null, "columnarSqlTeam", null, null)))
+                    .extracting("username").containsExactly("columnarSqlMember");
+        } finally {
+            tx.executeWithoutResult(status -> {
+                jdbcTemplate.update("delete from member where member_id = ?", 900_003L);
+                jdbcTemplate.update("delete from team where team_id = ?", 900_003L);
+            });
+        }
+    }
+
+    private void awaitUsable() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!columnarIndex.isUsable(key(null)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(columnarIndex.isUsable(key(null))).isTrue();
+    }
+
+    private MemberSearchKey key(String teamName) {
+        return MemberSearchKey.of(condition(null, teamName, null, null));
+    }
+
+    private MemberSearchCondition condition(String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
@@ -0,0 +1,120 @@
+package study.querydsl.cache;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.config.ReplicaDataSourceProperties;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+class MemberCountCacheTest {
+
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+    @Autowired
+    MemberCountCache countCache;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate tx;
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    @Autowired
+    ObjectProvider<ReplicaDataSourceProperties> replicaProperties;
+
+    Team countTeam;
+
+    @BeforeEach
+    void before() {
+        countCache.invalidateAll();
+        countTeam = tx.execute(status -> {
+            Team team = new Team("countTeam");
+            em.persist(team);
+            for (int i = 0; i < 3; i++) {
+                em.persist(new Member("count" + i, 10 + i, team));
+            }
+            return team;
+        });
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            queryFactory.delete(member).where(member.team.id.eq(countTeam.getId())).execute();
+            queryFactory.delete(team).where(team.id.eq(countTeam.getId())).execute();
+        });
+    }
+
+    @Test
+    void repeatPagingUsesCachedCount() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("countTeam");
+
+        Page<?> first = memberRepository.searchPageComplex(condition, PageRequest.of(0, 1));
+        assertThat(first.getTotalElements()).isEqualTo(3);
+
+        long hitsBefore = countCache.stats().getHits();
+        Page<?> second = memberRepository.searchPageComplex(condition, PageRequest.of(1, 1));
+        assertThat(second.getTotalElements()).isEqualTo(3);
+        assertThat(countCache.stats().getHits()).isEqualTo(hitsBefore + 1);
+    }
+
+    @Test
+    void saveDropsCachedCount() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("countTeam");
+        memberRepository.searchPageComplex(condition, PageRequest.of(0, 1));
+
+        tx.executeWithoutResult(status -> memberJpaRepository.save(new Member("count3", 20, countTeam)));
+
+        Page<?> page = memberRepository.searchPageComplex(condition, PageRequest.of(0, 1));
+        assertThat(page.getTotalElements()).isEqualTo(4);
+    }
+
+    //값을 돌려준 뒤 뒤에서 다시 셀 때도 읽기 전용 트랜잭션 안에서 센다.
+    @Test
+    void refreshRunsInReadOnlyTransaction() throws Exception {
+        MemberCountCache cache = new MemberCountCache(transactionManager, true, 10,
+                Duration.ofMinutes(1), Duration.ZERO, Duration.ofSeconds(5), replicaProperties);
+        try {
+            MemberSearchKey key = MemberSearchKey.of(new MemberSearchCondition());
+            cache.count(key, () -> 1);
+
+            CompletableFuture<Boolean> readOnly = new CompletableFuture<>();
+            assertThat(cache.count(key, () -> {
+                readOnly.complete(TransactionSynchronizationManager.isActualTransactionActive()
+                        && TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+                return 2;
+            })).isEqualTo(1);
+            assertThat(readOnly.get(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            cache.shutdown();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package study.querydsl.cache;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+//캐시는 커밋된 데이터만 다루므로 테스트 트랜잭션 없이 직접 커밋한다.
+@SpringBootTest
+class MemberSearchCacheTest {
+
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+    @Autowired
+    MemberSearchCache searchCache;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate tx;
+
+    Team cacheTeam;
+
+    @BeforeEach
+    void before() {
+        searchCache.invalidateAll();
+        cacheTeam = tx.execute(status -> {
+            Team team = new Team("cacheTeam");
+            em.persist(team);
+            em.persist(new Member("cache1", 10, team));
+            return team;
+        });
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            queryFactory.delete(member).where(member.team.id.eq(cacheTeam.getId())).execute();
+            queryFactory.delete(team).where(team.id.eq(cacheTeam.getId())).execute();
+        });
+    }
+
+    @Test
+    void hitAndInvalidateOnSave() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("cacheTeam");
+
+        assertThat(memberRepository.search(condition)).extracting("username").containsExactly("cache1");
+        long hitsBefore = searchCache.stats().getHits();
+        assertThat(memberRepository.search(condition)).extracting("username").containsExactly("cache1");
+        assertThat(searchCache.stats().getHits()).isEqualTo(hitsBefore + 1);
+
+        tx.executeWithoutResult(status -> memberJpaRepository.save(new Member("cache2", 20, cacheTeam)));
+
+        assertThat(memberRepository.search(condition)).extracting("username").containsExactly("cache1", "cache2");
+    }
+
+    @Test
+    void unrelatedWriteKeepsEntry() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("cacheTeam");
+        condition.setAgeLoe(15);
+        memberRepository.search(condition);
+
+        //나이 조건에 걸리지 않는 회원은 이 조건의 결과를 바꾸지 못한다.
+        tx.executeWithoutResult(status -> memberJpaRepository.save(new Member("cache3", 50, cacheTeam)));
+
+        long hitsBefore = searchCache.stats().getHits();
+        assertThat(memberRepository.search(condition)).extracting("username").containsExactly("cache1");
+        assertThat(searchCache.stats().getHits()).isEqualTo(hitsBefore + 1);
+    }
+
+    @Test
+    void invalidateOnBulkUpdate() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("cacheTeam");
+        condition.setAgeLoe(15);
+        assertThat(memberRepository.search(condition)).hasSize(1);
+
+        tx.executeWithoutResult(status -> queryFactory
+                .update(member)
+                .set(member.age, 99)
+                .where(member.username.eq("cache1"))
+                .execute());
+
+        List<MemberTeamDto> result = memberRepository.search(condition);
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    void storedRowsAreCopies() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("cacheTeam");
+        memberRepository.search(condition).get(0).setUsername("changed");
+
+        List<MemberTeamDto> cached = memberRepository.search(condition);
+        assertThat(cached).extracting("username").containsExactly("cache1");
+        //캐시에서 꺼낸 목록은 복사하지 않고 읽기 전용으로 준다.
+        assertThatThrownBy(() -> cached.add(cached.get(0))).isInstanceOf(UnsupportedOperationException.class);
+    }
+}
@@ -0,0 +1,115 @@
+package study.querydsl.cache;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+//2차 캐시는 커밋된 뒤에 채워지므로 테스트 트랜잭션 없이 직접 커밋한다.
+@SpringBootTest
+class SecondLevelCacheTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    EntityManagerFactory emf;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    TransactionTemplate tx;
+
+    Team cachedTeam;
+    Statistics statistics;
+
+    @BeforeEach
+    void before() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        cachedTeam = tx.execute(status -> {
+            Team team = new Team("cachedTeam");
+            em.persist(team);
+            em.persist(new Member("cached1", 10, team));
+            em.persist(new Member("cached2", 20, team));
+            return team;
+        });
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            queryFactory.delete(member).where(member.team.id.eq(cachedTeam.getId())).execute();
+            queryFactory.delete(team).where(team.id.eq(cachedTeam.getId())).execute();
+        });
+    }
+
+    @Test
+    void lazyTeamIsLoadedFromCache() {
+        long teamHits = regionHits(Team.class.getName());
+        long teamMisses = regionMisses(Team.class.getName());
+
+        List<String> teamNames = tx.execute(status -> {
+            List<Member> members = queryFactory.selectFrom(member)
+                    .where(member.team.id.eq(cachedTeam.getId()))
+                    .fetch();
+            return List.of(members.get(0).getTeam().getName(), members.get(1).getTeam().getName());
+        });
+
+        assertThat(teamNames).containsExactly("cachedTeam", "cachedTeam");
+        //팀은 DB 에 가지 않고 캐시에서 꺼낸다. 구문 수는 메모리 인덱스의 백그라운드 재로딩과 섞이므로 보지 않는다.
+        assertThat(regionMisses(Team.class.getName()) - teamMisses).isZero();
+        assertThat(regionHits(Team.class.getName()) - teamHits).isGreaterThan(0);
+    }
+
+    @Test
+    void renameAndMembersStayConsistent() {
+        tx.execute(status -> em.find(Team.class, cachedTeam.getId()).getMembers().size());
+
+        tx.executeWithoutResult(status -> {
+            Team found = em.find(Team.class, cachedTeam.getId());
+            found.setName("renamedCachedTeam");
+            em.persist(new Member("cached3", 30, found));
+        });
+
+        long teamHits = regionHits(Team.class.getName());
+        long teamMisses = regionMisses(Team.class.getName());
+        long memberFetches = membersFetchCount();
+        Team reloaded = tx.execute(status -> {
+            Team found = em.find(Team.class, cachedTeam.getId());
+            found.getMembers().size();
+            return found;
+        });
+        assertThat(reloaded.getName()).isEqualTo("renamedCachedTeam");
+        assertThat(reloaded.getMembers()).extracting("username")
+                .containsExactlyInAnyOrder("cached1", "cached2", "cached3");
+        //팀은 캐시에서, 회원은 컬렉션 조회 한 번으로 읽는다.
+        assertThat(regionMisses(Team.class.getName()) - teamMisses).isZero();
+        assertThat(regionHits(Team.class.getName()) - teamHits).isGreaterThan(0);
+        assertThat(membersFetchCount() - memberFetches).isEqualTo(1);
+    }
+
+    private long regionHits(String region) {
+        return statistics.getCacheRegionStatistics(region).getHitCount();
+    }
+
+    private long regionMisses(String region) {
+        return statistics.getCacheRegionStatistics(region).getMissCount();
+    }
+
+    private long membersFetchCount() {
+        return statistics.getCollectionStatistics(Team.class.getName() + ".members").getFetchCount();
+    }
+}
@@ -0,0 +1,120 @@
+package study.querydsl.cache;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+//사전은 커밋된 변경만 반영하므로 테스트 트랜잭션 없이 직접 커밋한다.
+@SpringBootTest
+class TeamDictionaryTest {
+
+    @Autowired
+    TeamDictionary teamDictionary;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate tx;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    MemberRepository memberRepository;
+
+    //시퀀스와 겹치지 않는 id
+    static final long SQL_TEAM_ID = 900_001L;
+    static final long SQL_MEMBER_ID = 900_001L;
+
+    Team dictionaryTeam;
+
+    @BeforeEach
+    void before() {
+        dictionaryTeam = tx.execute(status -> {
+            Team team = new Team("dictionaryTeam");
+            em.persist(team);
+            em.persist(new Member("dictionary1", 10, team));
+            return team;
+        });
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            queryFactory.delete(member).where(member.team.id.eq(dictionaryTeam.getId())).execute();
+            queryFactory.delete(team).where(team.id.eq(dictionaryTeam.getId())).execute();
+        });
+    }
+
+    @Test
+    void insertAndRenameAreApplied() {
+        assertThat(teamDictionary.idsOf("dictionaryTeam")).containsExactly(dictionaryTeam.getId());
+        assertThat(teamDictionary.nameOf(dictionaryTeam.getId())).isEqualTo("dictionaryTeam");
+
+        tx.executeWithoutResult(status -> em.find(Team.class, dictionaryTeam.getId()).setName("renamedTeam"));
+
+        assertThat(teamDictionary.idsOf("dictionaryTeam")).isNull();
+        assertThat(teamDictionary.nameOf(dictionaryTeam.getId())).isEqualTo("renamedTeam");
+    }
+
+    @Test
+    void searchFillsTeamNameWithoutJoin() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("dictionaryTeam");
+
+        assertThat(memberJpaRepository.search(condition))
+                .extracting("username", "teamName")
+                .containsExactly(tuple("dictionary1", "dictionaryTeam"));
+
+        condition.setTeamName("noSuchTeam");
+        assertThat(memberJpaRepository.search(condition)).isEmpty();
+    }
+
+    //리스너를 거치지 않고 SQL 로 들어온 팀은 사전에 없지만 팀 이름 조인으로 찾는다.
+    @Test
+    void teamUnknownToDictionaryFallsBackToJoin() {
+        tx.executeWithoutResult(status -> {
+            jdbcTemplate.update("insert into team (team_id, name) values (?, ?)", SQL_TEAM_ID, "sqlTeam");
+            jdbcTemplate.update("insert into member (member_id, username, age, team_id) values (?, ?, ?, ?)", SQL_MEMBER_ID, "sqlMember", 20, SQL_TEAM_ID);
+        });
+        try {
+            assertThat(teamDictionary.idsOf("sqlTeam")).isNull();
+
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setTeamName("sqlTeam");
+            assertThat(memberJpaRepository.search(condition))
+                    .extracting("username", "teamName")
+                    .containsExactly(tuple("sqlMember", "sqlTeam"));
+
+            Page<MemberTeamDto> page = memberRepository.searchPageSimple(condition, PageRequest.of(0, 10));
+            assertThat(page.getTotalElements()).isEqualTo(1);
+            assertThat(page.getContent()).extracting("username").containsExactly("sqlMember");
+        } finally {
+            tx.executeWithoutResult(status -> {
+                jdbcTemplate.update("delete from member where member_id = ?", SQL_MEMBER_ID);
+                jdbcTemplate.update("delete from team where team_id = ?", SQL_TEAM_ID);
+            });
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package study.querydsl.cache;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+//인덱스는 커밋된 변경만 반영하므로 테스트 트랜잭션 없이 직접 커밋한다.
+@SpringBootTest(properties = "member.username-index.suggest.enabled=true")
+class UsernameIndexTest {
+
+    @Autowired
+    UsernameIndex usernameIndex;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    EntityManagerFactory emf;
+    @Autowired
+    TransactionTemplate tx;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    Member indexed;
+
+    @BeforeEach
+    void before() {
+        indexed = tx.execute(status -> {
+            Member saved = new Member("usernameIndex1", 10);
+            em.persist(saved);
+            return saved;
+        });
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> em.remove(em.find(Member.class, indexed.getId())));
+    }
+
+    @Test
+    void missDoesNotQuery() {
+        assertThat(usernameIndex.isUsable()).isTrue();
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        long before = statistics.getPrepareStatementCount();
+
+        assertThat(memberRepository.findByUsername("usernameIndexMissing")).isEmpty();
+        assertThat(memberJpaRepository.findByUsername("usernameIndexMissing")).isEmpty();
+        assertThat(memberJpaRepository.findByUsername_QueryDsl("usernameIndexMissing")).isEmpty();
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(before);
+    }
+
+    @Test
+    void hitLoadsById() {
+        assertThat(usernameIndex.idsOf("usernameIndex1")).containsExactly(indexed.getId());
+        assertThat(memberRepository.findByUsername("usernameIndex1")).extracting("id").containsExactly(indexed.getId());
+        assertThat(memberJpaRepository.findByUsername("usernameIndex1")).extracting("age").containsExactly(10);
+    }
+
+    @Test
+    void renameAndDeleteAreApplied() {
+        tx.executeWithoutResult(status -> em.find(Member.class, indexed.getId()).setUsername("usernameIndex2"));
+        assertThat(memberRepository.findByUsername("usernameIndex1")).isEmpty();
+        assertThat(memberRepository.findByUsername("usernameIndex2")).extracting("id").containsExactly(indexed.getId());
+
+        Member other = tx.execute(status -> {
+            Member saved = new Member("usernameIndex2", 20);
+            em.persist(saved);
+            return saved;
+        });
+        assertThat(memberRepository.findByUsername("usernameIndex2")).hasSize(2);
+
+        tx.executeWithoutResult(status -> queryFactory.selectFrom(member).where(member.id.eq(other.getId())).fetchOne()
+                .setUsername("usernameIndex3"));
+        tx.executeWithoutResult(status -> em.remove(em.find(Member.class, other.getId())));
+        assertThat(usernameIndex.idsOf("usernameIndex3")).isEmpty();
+        assertThat(memberRepository.findByUsername("usernameIndex2")).extracting("id").containsExactly(indexed.getId());
+    }
+
+    @Test
+    void staleHitFallsBackToQuery() {
+        //SQL 로 바꾸면 이벤트가 없어서 인덱스는 예전 이름을 그대로 가진다.
+        tx.executeWithoutResult(status -> jdbcTemplate.update(
+                "update member set username = ? where member_id = ?", "usernameIndexSql", indexed.getId()));
+        assertThat(usernameIndex.idsOf("usernameIndex1")).containsExactly(indexed.getId());
+
+        assertThat(memberRepository.findByUsername("usernameIndex1")).isEmpty();
+        assertThat(memberJpaRepository.findByUsername("usernameIndex1")).isEmpty();
+        assertThat(memberJpaRepository.findByUsername_QueryDsl("usernameIndex1")).isEmpty();
+    }
+
+    @Test
+    void suggestRanksPrefixBeforeContains() {
+        List<Long> ids = tx.execute(status -> Stream.of("typeAhead", "typeAheadB", "typeAheadA", "myTypeAhead", "xTypeAhe")
+                .map(username -> {
+                    Member saved = new Member(username, 10);
+                    em.persist(saved);
+                    return saved.getId();
+                })
+                .collect(Collectors.toList()));
+        try {
+            assertThat(memberRepository.suggestUsernames("typeAhead", 10))
+                    .containsExactly("typeAhead", "typeAheadA", "typeAheadB");
+            assertThat(memberRepository.suggestUsernames("TypeAhead", 10))
+                    .containsExactly("myTypeAhead");
+            assertThat(memberRepository.suggestUsernames("typeAhead", 2))
+                    .containsExactly("typeAhead", "typeAheadA");
+
+            //쓰기 트랜잭션 안에서는 DB 로 간다. 순위가 같아야 한다.
+            List<String> fromDb = tx.execute(status -> memberRepository.suggestUsernames("ypeAhe", 10));
+            assertThat(memberRepository.suggestUsernames("ypeAhe", 10))
+                    .containsExactlyElementsOf(fromDb)
+                    .containsExactly("myTypeAhead", "typeAhead", "typeAheadA", "typeAheadB", "xTypeAhe");
+
+            tx.executeWithoutResult(status -> em.find(Member.class, ids.get(0)).setUsername("renamed"));
+            assertThat(memberRepository.suggestUsernames("typeAhead", 10))
+                    .containsExactly("typeAheadA", "typeAheadB");
+        } finally {
+            tx.executeWithoutResult(status -> ids.forEach(id -> em.remove(em.find(Member.class, id))));
+        }
+        assertThat(memberRepository.suggestUsernames("ypeAhe", 10)).isEmpty();
+    }
+
+    @Test
+    void bloomFilterFalsePositiveRate() {
+        UsernameIndex.BloomFilter bloomFilter = new UsernameIndex.BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            bloomFilter.put("member" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            assertThat(bloomFilter.mightContain("member" + i)).isTrue();
+            if (bloomFilter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(30);
+    }
+}
@@ -0,0 +1,93 @@
+package study.querydsl.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+        "spring.datasource.hikari.maximum-pool-size=7",
+        "member.datasource.replicas[0].url=jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1",
+        "member.datasource.replicas[0].username=sa",
+        "member.datasource.replicas[0].hikari.maximum-pool-size=3",
+        "decorator.datasource.exclude-beans=lazyDataSource"
+})
+class DataSourceRoutingTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate tx;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    @Qualifier("replicationRoutingDataSource")
+    DataSource routingDataSource;
+
+    @AfterEach
+    void after() {
+        JdbcTemplate replica = new JdbcTemplate(target(ReplicationRoutingDataSource.REPLICA_PREFIX + 0));
+        replica.execute("drop all objects");
+    }
+
+    @Test
+    void readOnlyTransactionGoesToReplica() {
+        String writeUrl = tx.execute(status -> connectionUrl());
+
+        TransactionTemplate readOnlyTx = new TransactionTemplate(tx.getTransactionManager());
+        readOnlyTx.setReadOnly(true);
+        String readUrl = readOnlyTx.execute(status -> connectionUrl());
+
+        assertThat(writeUrl).contains("routing-primary");
+        assertThat(readUrl).contains("routing-replica");
+    }
+
+    @Test
+    void hikariSettingsApplyToEachPool() {
+        assertThat(target(ReplicationRoutingDataSource.PRIMARY).getMaximumPoolSize()).isEqualTo(7);
+        assertThat(target(ReplicationRoutingDataSource.REPLICA_PREFIX + 0).getMaximumPoolSize()).isEqualTo(3);
+    }
+
+    //레플리카에만 있는 row 가 읽기 전용 조회 결과로 나오면 쿼리가 레플리카에서 실행된 것이다.
+    @Test
+    void readOnlyQueryRunsOnReplica() {
+        JdbcTemplate primary = new JdbcTemplate(target(ReplicationRoutingDataSource.PRIMARY));
+        JdbcTemplate replica = new JdbcTemplate(target(ReplicationRoutingDataSource.REPLICA_PREFIX + 0));
+        for (String ddl : primary.queryForList("script nodata", String.class)) {
+            replica.execute(ddl);
+        }
+        replica.update("insert into team (team_id, name) values (?, ?)", 910_001L, "replicaTeam");
+        replica.update("insert into member (member_id, username, age, team_id) values (?, ?, ?, ?)", 910_001L, "replicaOnly", 30, 910_001L);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("replicaTeam");
+        //MemberRepositoryImpl 은 클래스 전체가 읽기 전용 트랜잭션이다.
+        List<MemberTeamDto> result = memberRepository.search(condition);
+
+        assertThat(result).extracting("username").containsExactly("replicaOnly");
+        assertThat(primary.queryForObject("select count(*) from member where member_id = 910001", Long.class)).isZero();
+    }
+
+    private HikariDataSource target(String key) {
+        return (HikariDataSource) ((ReplicationRoutingDataSource) routingDataSource).getResolvedDataSources().get(key);
+    }
+
+    private String connectionUrl() {
+        return em.unwrap(Session.class).doReturningWork(connection -> connection.getMetaData().getURL());
+    }
+}
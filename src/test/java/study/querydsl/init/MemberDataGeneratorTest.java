@@ -0,0 +1,134 @@
+package study.querydsl.init;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+//청크마다 커밋하므로 테스트 트랜잭션 없이 실행하고 직접 지운다.
+@SpringBootTest
+class MemberDataGeneratorTest {
+
+    @Autowired
+    MemberDataGenerator memberDataGenerator;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    TransactionTemplate tx;
+
+    @AfterEach
+    void after() {
+        deleteGenerated();
+    }
+
+    @Test
+    void sameSeedSameData() {
+        MemberDataSpec spec = spec().threads(4).batchSize(300).build();
+        assertThat(memberDataGenerator.generate(spec)).isEqualTo(5000);
+        List<String> first = snapshot();
+
+        deleteGenerated();
+        //스레드 수, 배치 크기가 달라도 같다.
+        memberDataGenerator.generate(spec().threads(1).batchSize(777).build());
+        List<String> second = snapshot();
+
+        assertThat(first).hasSize(5000);
+        assertThat(second).isEqualTo(first);
+
+        deleteGenerated();
+        memberDataGenerator.generate(spec().seed(7).build());
+        assertThat(snapshot()).isNotEqualTo(first);
+    }
+
+    @Test
+    void shape() {
+        memberDataGenerator.generate(spec()
+                .ageDistribution(MemberDataSpec.AgeDistribution.NORMAL)
+                .ageMin(20)
+                .ageMax(60)
+                .ageStddev(5)
+                .build());
+
+        List<Tuple> usernames = queryFactory
+                .select(member.username, member.count())
+                .from(member)
+                .where(member.username.startsWith("genMember"))
+                .groupBy(member.username)
+                .orderBy(member.count().desc())
+                .fetch();
+        assertThat(usernames.size()).isLessThanOrEqualTo(500);
+        //Zipf(1.2) 에서 가장 흔한 이름은 고르게 나눌 때(10 명)보다 훨씬 많다.
+        assertThat(usernames.get(0).get(member.username)).isEqualTo("genMember0");
+        assertThat(usernames.get(0).get(member.count())).isGreaterThan(500L);
+
+        List<Long> teamSizes = queryFactory
+                .select(member.count())
+                .from(member)
+                .join(member.team, team)
+                .where(team.name.startsWith("genTeam"))
+                .groupBy(team.name)
+                .orderBy(team.name.asc())
+                .fetch();
+        //skew 0 이면 i % teams 로 나눈다.
+        assertThat(teamSizes).containsExactly(715L, 715L, 714L, 714L, 714L, 714L, 714L);
+
+        Tuple ages = queryFactory
+                .select(member.age.min(), member.age.max(), member.age.avg())
+                .from(member)
+                .where(member.username.startsWith("genMember"))
+                .fetchOne();
+        assertThat(ages.get(member.age.min())).isGreaterThanOrEqualTo(20);
+        assertThat(ages.get(member.age.max())).isLessThanOrEqualTo(60);
+        assertThat(ages.get(member.age.avg())).isBetween(39.0, 41.0);
+    }
+
+    @Test
+    void invalidSpec() {
+        assertThatThrownBy(() -> memberDataGenerator.generate(spec().ageMin(50).ageMax(10).build()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> memberDataGenerator.generate(spec().teams(0).build()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private MemberDataSpec.MemberDataSpecBuilder spec() {
+        return MemberDataSpec.builder()
+                .teams(7)
+                .members(5000)
+                .teamPrefix("genTeam")
+                .usernamePrefix("genMember")
+                .usernameCardinality(500)
+                .usernameSkew(1.2);
+    }
+
+    //id 는 실행마다 다르므로 id 순서대로 값만 비교한다.
+    private List<String> snapshot() {
+        return queryFactory
+                .select(member.username, member.age, team.name)
+                .from(member)
+                .join(member.team, team)
+                .where(team.name.startsWith("genTeam"))
+                .orderBy(member.id.asc())
+                .fetch().stream()
+                .map(tuple -> tuple.get(member.username) + "/" + tuple.get(member.age) + "/" + tuple.get(team.name))
+                .collect(Collectors.toList());
+    }
+
+    private void deleteGenerated() {
+        tx.executeWithoutResult(status -> {
+            List<Long> teamIds = queryFactory.select(team.id).from(team).where(team.name.startsWith("genTeam")).fetch();
+            queryFactory.delete(member).where(member.team.id.in(teamIds)).execute();
+            queryFactory.delete(team).where(team.id.in(teamIds)).execute();
+        });
+    }
+}
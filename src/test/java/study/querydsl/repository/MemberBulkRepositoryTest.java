@@ -0,0 +1,145 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.event.BulkChangedEvent;
+import study.querydsl.event.BulkFinishedEvent;
+import study.querydsl.event.BulkStartedEvent;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+//범위마다 커밋하므로 테스트 트랜잭션 없이 실행하고 직접 지운다.
+@SpringBootTest(properties = {"member.bulk.chunk-size=10", "member.bulk.pause=0ms"})
+@RecordApplicationEvents
+class MemberBulkRepositoryTest {
+
+    @Autowired
+    MemberBulkRepository memberBulkRepository;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    EntityManagerFactory emf;
+    @Autowired
+    TransactionTemplate tx;
+    @Autowired
+    ApplicationEvents events;
+
+    Team bulkTeam;
+
+    @BeforeEach
+    void before() {
+        bulkTeam = tx.execute(status -> {
+            Team team = new Team("bulkTeam");
+            em.persist(team);
+            for (int i = 0; i < 35; i++) {
+                em.persist(new Member("bulk" + i, i, team));
+            }
+            return team;
+        });
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            queryFactory.delete(member).where(member.team.id.eq(bulkTeam.getId())).execute();
+            queryFactory.delete(team).where(team.id.eq(bulkTeam.getId())).execute();
+        });
+    }
+
+    @Test
+    void updateInRanges() {
+        List<MemberBulkProgress> progress = new ArrayList<>();
+
+        long updated = memberBulkRepository.update(
+                member.team.id.eq(bulkTeam.getId()).and(member.age.lt(20)),
+                clause -> clause.set(member.age, member.age.add(100)),
+                progress::add);
+
+        assertThat(updated).isEqualTo(20);
+        //조건에 맞는 id 범위를 10 씩 잘라서 여러 번에 나눠 처리 (id 블록에 따라 청크 수는 달라질 수 있다)
+        assertThat(progress.size()).isGreaterThanOrEqualTo(2);
+        assertThat(progress.get(0).getAffectedRows()).isLessThanOrEqualTo(10);
+        assertThat(progress.get(progress.size() - 1).getAffectedRows()).isEqualTo(20);
+        assertThat(progress.get(progress.size() - 1).getRatio()).isEqualTo(1.0);
+        assertThat(queryFactory.select(member.count()).from(member)
+                .where(member.team.id.eq(bulkTeam.getId()), member.age.goe(100)).fetchOne()).isEqualTo(20);
+    }
+
+    @Test
+    void skipsEmptyRangesAndPublishesOnce() {
+        List<MemberBulkProgress> progress = new ArrayList<>();
+
+        //처음과 마지막 회원만 맞으므로 사이의 빈 범위는 건너뛴다.
+        long updated = memberBulkRepository.update(
+                member.team.id.eq(bulkTeam.getId()).and(member.age.in(0, 34)),
+                clause -> clause.set(member.age, member.age.add(100)),
+                progress::add);
+
+        assertThat(updated).isEqualTo(2);
+        assertThat(progress).hasSize(2);
+        assertThat(events.stream(BulkStartedEvent.class)).hasSize(1);
+        assertThat(events.stream(BulkFinishedEvent.class)).extracting("affectedRows").containsExactly(2L);
+        assertThat(events.stream(BulkChangedEvent.class)).isEmpty();
+    }
+
+    @Test
+    void deleteInRanges() {
+        long deleted = memberBulkRepository.delete(member.team.id.eq(bulkTeam.getId()).and(member.age.goe(30)));
+
+        assertThat(deleted).isEqualTo(5);
+        assertThat(queryFactory.select(member.count()).from(member)
+                .where(member.team.id.eq(bulkTeam.getId())).fetchOne()).isEqualTo(30);
+    }
+
+    @Test
+    void loadedMembersAreEvicted() {
+        //OSIV 처럼 요청 동안 유지되는 영속성 컨텍스트를 흉내 낸다.
+        EntityManager requestEm = emf.createEntityManager();
+        TransactionSynchronizationManager.bindResource(emf, new EntityManagerHolder(requestEm));
+        try {
+            Member loaded = queryFactory.selectFrom(member)
+                    .where(member.team.id.eq(bulkTeam.getId()), member.username.eq("bulk0"))
+                    .fetchOne();
+            assertThat(loaded.getAge()).isEqualTo(0);
+
+            memberBulkRepository.update(member.team.id.eq(bulkTeam.getId()),
+                    clause -> clause.set(member.age, 77));
+
+            Member reloaded = em.find(Member.class, loaded.getId());
+            assertThat(reloaded).isNotSameAs(loaded);
+            assertThat(reloaded.getAge()).isEqualTo(77);
+        } finally {
+            TransactionSynchronizationManager.unbindResource(emf);
+            requestEm.close();
+        }
+    }
+
+    @Test
+    void rejectsSurroundingTransaction() {
+        assertThatThrownBy(() -> tx.executeWithoutResult(status ->
+                memberBulkRepository.delete(member.team.id.eq(bulkTeam.getId()))))
+                .isInstanceOf(IllegalTransactionStateException.class);
+    }
+}
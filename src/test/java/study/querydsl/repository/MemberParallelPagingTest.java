@@ -0,0 +1,102 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+//병렬 쿼리는 다른 스레드의 새 트랜잭션에서 돌기 때문에 데이터를 커밋해 둔다.
+@SpringBootTest
+class MemberParallelPagingTest {
+
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate tx;
+    @Autowired
+    DataSource dataSource;
+
+    Team parallelTeam;
+
+    @BeforeEach
+    void before() {
+        parallelTeam = tx.execute(status -> {
+            Team team = new Team("parallelTeam");
+            em.persist(team);
+            for (int i = 0; i < 5; i++) {
+                em.persist(new Member("parallel" + i, 10 + i, team));
+            }
+            return team;
+        });
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            queryFactory.delete(member).where(member.team.id.eq(parallelTeam.getId())).execute();
+            queryFactory.delete(team).where(team.id.eq(parallelTeam.getId())).execute();
+        });
+    }
+
+    @Test
+    void searchPageParallelTest() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("parallelTeam");
+
+        Page<MemberTeamDto> first = memberRepository.searchPageParallel(condition, PageRequest.of(0, 2));
+        assertThat(first.getContent()).hasSize(2);
+        assertThat(first.getTotalElements()).isEqualTo(5);
+
+        //마지막 페이지는 컨텐츠만으로 전체 건수가 정해진다.
+        Page<MemberTeamDto> last = memberRepository.searchPageParallel(condition, PageRequest.of(2, 2));
+        assertThat(last.getContent()).hasSize(1);
+        assertThat(last.getTotalElements()).isEqualTo(5);
+    }
+
+    //호출한 쪽이 커넥션을 잡고 기다리지 않으므로 풀에 커넥션이 하나만 남아 있어도 작업들이 나눠 쓰고 끝난다.
+    @Test
+    void searchPageParallelWithOneFreeConnection() throws Exception {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("parallelTeam");
+        //다른 테스트의 count 캐시를 타지 않는 조건
+        condition.setAgeGoe(10);
+
+        int poolSize = dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+        List<Connection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < poolSize - 1; i++) {
+                held.add(dataSource.getConnection());
+            }
+            Page<MemberTeamDto> page = memberRepository.searchPageParallel(condition, PageRequest.of(0, 2));
+            assertThat(page.getTotalElements()).isEqualTo(5);
+        } finally {
+            for (Connection connection : held) {
+                connection.close();
+            }
+        }
+    }
+}
@@ -5,7 +5,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.EstimatedPage;
+import study.querydsl.dto.MemberCursorPage;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
@@ -14,6 +18,8 @@ import study.querydsl.entity.Team;
 
 import javax.persistence.EntityManager;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static study.querydsl.entity.QMember.*;
@@ -101,6 +107,128 @@ public class MemberRepositoryTest {
 
     }
 
+    @Test
+    void searchAllConditionsTest() {
+        Team team = new Team("templateTeam");
+        em.persist(team);
+        em.persist(new Member("template1", 10, team));
+        em.persist(new Member("template2", 20, team));
+        em.persist(new Member("template2", 30, team));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("template2");
+        condition.setTeamName("templateTeam");
+        condition.setAgeGoe(15);
+        condition.setAgeLoe(25);
+
+        assertThat(memberRepository.search(condition)).extracting("age").containsExactly(20);
+
+        Page<MemberTeamDto> page = memberRepository.searchPageSimple(condition, PageRequest.of(0, 10));
+        assertThat(page.getTotalElements()).isEqualTo(1);
+        assertThat(page.getContent()).extracting("teamName").containsExactly("templateTeam");
+    }
+
+    @Test
+    void searchSliceTest() {
+        Team team = new Team("sliceTeam");
+        em.persist(team);
+        for (int i = 0; i < 3; i++) {
+            em.persist(new Member("slice" + i, 10 + i, team));
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("sliceTeam");
+
+        Slice<MemberTeamDto> first = memberRepository.searchSlice(condition, PageRequest.of(0, 2));
+        assertThat(first.getContent()).hasSize(2);
+        assertThat(first.hasNext()).isTrue();
+
+        Slice<MemberTeamDto> last = memberRepository.searchSlice(condition, PageRequest.of(1, 2));
+        assertThat(last.getContent()).hasSize(1);
+        assertThat(last.hasNext()).isFalse();
+    }
+
+    @Test
+    void searchByCursorTest() {
+        Team team = new Team("cursorTeam");
+        em.persist(team);
+        for (int i = 0; i < 5; i++) {
+            em.persist(new Member("cursor" + i, 10 + i, team));
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("cursorTeam");
+
+        MemberCursorPage first = memberRepository.searchByCursor(condition, null, 2);
+        assertThat(first.getContent()).extracting("username").containsExactly("cursor0", "cursor1");
+        assertThat(first.isHasNext()).isTrue();
+
+        MemberCursorPage second = memberRepository.searchByCursor(condition, first.getNextCursor(), 2);
+        assertThat(second.getContent()).extracting("username").containsExactly("cursor2", "cursor3");
+
+        MemberCursorPage last = memberRepository.searchByCursor(condition, second.getNextCursor(), 2);
+        assertThat(last.getContent()).extracting("username").containsExactly("cursor4");
+        assertThat(last.isHasNext()).isFalse();
+        assertThat(last.getNextCursor()).isNull();
+    }
+
+    @Test
+    void streamSearchTest() {
+        Team team = new Team("streamTeam");
+        em.persist(team);
+        for (int i = 0; i < 5; i++) {
+            em.persist(new Member("stream" + i, 10 + i, team));
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("streamTeam");
+        condition.setAgeGoe(11);
+
+        try (Stream<MemberTeamDto> stream = memberRepository.streamSearch(condition)) {
+            List<String> usernames = stream.map(MemberTeamDto::getUsername).collect(Collectors.toList());
+            assertThat(usernames).containsExactly("stream1", "stream2", "stream3", "stream4");
+        }
+    }
+
+    @Test
+    void searchPageEstimatedTest() {
+        Team team = new Team("estimateTeam");
+        em.persist(team);
+        for (int i = 0; i < 10; i++) {
+            em.persist(new Member("estimate" + i, 10 + i, team));
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("estimateTeam");
+
+        //countLimit 보다 많으면 근사값
+        EstimatedPage<MemberTeamDto> capped = memberRepository.searchPageEstimated(condition, PageRequest.of(0, 3), 5);
+        assertThat(capped.getContent()).hasSize(3);
+        assertThat(capped.getTotalElements()).isEqualTo(5);
+        assertThat(capped.isTotalApproximate()).isTrue();
+
+        //countLimit 안쪽이면 정확한 값
+        EstimatedPage<MemberTeamDto> exact = memberRepository.searchPageEstimated(condition, PageRequest.of(0, 3), 100);
+        assertThat(exact.getTotalElements()).isEqualTo(10);
+        assertThat(exact.isTotalApproximate()).isFalse();
+
+        //마지막 페이지는 count 없이 정확한 값
+        EstimatedPage<MemberTeamDto> last = memberRepository.searchPageEstimated(condition, PageRequest.of(3, 3), 5);
+        assertThat(last.getContent()).hasSize(1);
+        assertThat(last.getTotalElements()).isEqualTo(10);
+        assertThat(last.isTotalApproximate()).isFalse();
+
+        //끝을 지난 페이지는 offset 으로 추정하지 않고 센다.
+        EstimatedPage<MemberTeamDto> pastEnd = memberRepository.searchPageEstimated(condition, PageRequest.of(50, 3), 100);
+        assertThat(pastEnd.getContent()).isEmpty();
+        assertThat(pastEnd.getTotalElements()).isEqualTo(10);
+        assertThat(pastEnd.isTotalApproximate()).isFalse();
+
+        //요청 정렬을 따르고 같은 값은 member.id 순서
+        EstimatedPage<MemberTeamDto> sorted = memberRepository.searchPageEstimated(condition, PageRequest.of(1, 3, Sort.by(Sort.Order.desc("age"))), 100);
+        assertThat(sorted.getContent()).extracting("age").containsExactly(16, 15, 14);
+    }
+
     @Test
     public void querydslPredicateExecutorTest() {
         Team teamA = new Team("teamA");
@@ -0,0 +1,116 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.cache.MemberSearchKey;
+import study.querydsl.cache.TeamDictionary;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+//offset 2 부터 deferred join 으로 바뀌게 해서 두 방식의 결과가 이어지는지 본다.
+//팀 사전은 커밋된 팀만 알고 쓰기 트랜잭션 안에서는 쓰지 않으므로 테스트 트랜잭션 없이 직접 커밋한다.
+@SpringBootTest(properties = "member.paging.deferred-join-offset=2")
+class MemberSearchTemplatesTest {
+
+    @Autowired
+    MemberSearchTemplates searchTemplates;
+    @Autowired
+    TeamDictionary teamDictionary;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate tx;
+
+    Team templateTeam;
+    MemberSearchKey key;
+
+    @BeforeEach
+    void before() {
+        templateTeam = tx.execute(status -> {
+            Team team = new Team("templateTeam");
+            em.persist(team);
+            em.persist(new Member("a", 30, team));
+            em.persist(new Member("b", 10, team));
+            em.persist(new Member("c", 40, team));
+            em.persist(new Member("d", 20, team));
+            em.persist(new Member("e", 20, team));
+            return team;
+        });
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("templateTeam");
+        key = MemberSearchKey.of(condition);
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            queryFactory.delete(member).where(member.team.id.eq(templateTeam.getId())).execute();
+            queryFactory.delete(team).where(team.id.eq(templateTeam.getId())).execute();
+        });
+    }
+
+    //팀 이름 조건을 team_id 로 바꿔서 member 만 읽는다.
+    @Test
+    void deferredJoinKeepsSortOrder() {
+        assertThat(teamDictionary.isUsable()).isTrue();
+        Sort sort = Sort.by(Sort.Order.desc("age"));
+
+        assertThat(searchTemplates.fetchPage(key, 0, 2, sort)).extracting("username").containsExactly("c", "a");
+        //여기부터 deferred join. 나이가 같으면 id 순서
+        assertThat(searchTemplates.fetchPage(key, 2, 2, sort)).extracting("username").containsExactly("d", "e");
+        assertThat(searchTemplates.fetchPage(key, 4, 2, sort))
+                .extracting("username", "teamName").containsExactly(tuple("b", "templateTeam"));
+        assertThat(searchTemplates.fetchPage(key, 6, 2, sort)).isEmpty();
+    }
+
+    //팀 이름 정렬은 팀 조인이 있어야 하므로 조인 쿼리로 deferred join 한다.
+    @Test
+    void deferredJoinWithTeamJoin() {
+        Sort sort = Sort.by(Sort.Order.asc("teamName"), Sort.Order.desc("age"));
+
+        assertThat(searchTemplates.fetchPage(key, 2, 2, sort)).extracting("username").containsExactly("d", "e");
+    }
+
+    @Test
+    void unsortedPagesFollowMemberId() {
+        assertThat(searchTemplates.fetchPage(key, 0, 3, Sort.unsorted())).extracting("username").containsExactly("a", "b", "c");
+        assertThat(searchTemplates.fetchPage(key, 3, 3, Sort.unsorted())).extracting("username").containsExactly("d", "e");
+    }
+
+    //setFirstResult 에 넣을 수 없는 offset 은 쿼리 없이 빈 페이지
+    @Test
+    void offsetBeyondInt() {
+        assertThat(searchTemplates.fetchPage(key, Integer.MAX_VALUE + 1L, 2, Sort.unsorted())).isEmpty();
+    }
+
+    @Test
+    void countUpToStopsAfterLimit() {
+        assertThat(searchTemplates.countUpTo(key, 3)).isEqualTo(4);
+        assertThat(searchTemplates.countUpTo(key, 10)).isEqualTo(5);
+    }
+
+    //모르는 정렬 속성은 무시한다.
+    @Test
+    void unknownSortProperty() {
+        assertThat(searchTemplates.fetchPage(key, 0, 2, Sort.by("password"))).extracting("username").containsExactly("a", "b");
+        assertThat(searchTemplates.fetchPage(key, 0, 2, Sort.by(Sort.Order.asc("password"), Sort.Order.desc("username"))))
+                .extracting("username").containsExactly("e", "d");
+    }
+}
@@ -0,0 +1,140 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Predicate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest(properties = "member.predicate.max-parameters=100")
+@Transactional
+class PredicateGuardTest {
+
+    @Autowired
+    PredicateGuard predicateGuard;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    EntityManagerFactory emf;
+
+    @BeforeEach
+    void before() {
+        Team teamA = new Team("guardTeamA");
+        em.persist(teamA);
+        em.persist(new Member("guard1", 10, teamA));
+        em.persist(new Member("guard2", 20, teamA));
+        em.persist(new Member("guard3", 30, null));
+    }
+
+    @Test
+    void reorderedPredicatesBecomeSame() {
+        Predicate a = member.age.between(10, 40).and(member.username.eq("guard1")).and(member.age.gt(5));
+        Predicate b = member.age.gt(5).and(member.username.eq("guard1").and(member.age.between(10, 40)));
+
+        assertThat(predicateGuard.canonicalize(a)).isEqualTo(predicateGuard.canonicalize(b));
+        //값만 다르면 순서도 같다.
+        Predicate c = member.username.eq("guard2").and(member.age.gt(1)).and(member.age.between(20, 30));
+        assertThat(predicateGuard.canonicalize(a)).hasToString("member1.age between 10 and 40 && member1.username = guard1 && member1.age > 5");
+        assertThat(predicateGuard.canonicalize(c)).hasToString("member1.age between 20 and 30 && member1.username = guard2 && member1.age > 1");
+    }
+
+    @Test
+    void foldsAndRewrites() {
+        //or 로 이은 eq 는 in 으로, 중복은 하나로
+        Predicate ors = member.username.eq("guard2").or(member.username.eq("guard1")).or(member.username.in("guard1", "guard3"));
+        assertThat(predicateGuard.canonicalize(ors)).isEqualTo(member.username.in(List.of("guard1", "guard2", "guard3")));
+
+        assertThat(predicateGuard.canonicalize(member.username.eq("guard1").not().not())).isEqualTo(member.username.eq("guard1"));
+        assertThat(predicateGuard.isAlwaysFalse(predicateGuard.canonicalize(member.username.in(List.of())))).isTrue();
+        assertThat(predicateGuard.isAlwaysTrue(predicateGuard.canonicalize(member.username.eq("x").or(member.id.isNotNull().or(member.age.lt(0).not().not()))))).isFalse();
+    }
+
+    @Test
+    void sameJpqlReusesPlan() {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        memberRepository.findAll(member.age.goe(10).and(member.username.startsWith("guard")));
+        long misses = statistics.getQueryPlanCacheMissCount();
+
+        Iterable<Member> result = memberRepository.findAll(member.username.startsWith("guard").and(member.age.goe(20)));
+
+        assertThat(result).extracting("username").containsExactlyInAnyOrder("guard2", "guard3");
+        assertThat(statistics.getQueryPlanCacheMissCount()).isEqualTo(misses);
+    }
+
+    @Test
+    void alwaysFalseSkipsDatabase() {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        em.flush();
+        long statements = statistics.getPrepareStatementCount();
+
+        assertThat(memberRepository.findAll(member.username.in(List.of()).and(member.age.gt(0)))).isEmpty();
+        assertThat(memberRepository.findAll(member.username.in(List.of()), PageRequest.of(0, 10)).getTotalElements()).isZero();
+        assertThat(memberRepository.count(member.username.in(List.of()))).isZero();
+        assertThat(memberRepository.findOne(member.username.in(List.of()))).isEmpty();
+        assertThat(memberRepository.exists(member.username.in(List.of()).and(member.age.gt(0)))).isFalse();
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements);
+    }
+
+    @Test
+    void findOneAndExistsAreCanonicalized() {
+        assertThat(memberRepository.findOne(member.age.gt(5).and(member.username.eq("guard1")))).get()
+                .extracting("username").isEqualTo("guard1");
+        assertThat(memberRepository.exists(member.username.eq("guard2").or(member.username.eq("guard9")))).isTrue();
+
+        List<String> usernames = LongStream.range(0, 200).mapToObj(i -> "guard" + i).collect(Collectors.toList());
+        assertThatThrownBy(() -> memberRepository.exists(member.username.in(usernames)))
+                .isInstanceOf(InvalidDataAccessApiUsageException.class)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsDeepPredicateBeforeNormalizing() {
+        //정리하면 age > 0 하나지만 정리하기 전에 깊이로 거절한다.
+        Predicate deep = member.age.gt(0);
+        for (int i = 0; i < 5000; i++) {
+            deep = ExpressionUtils.and(deep, member.age.gt(0));
+        }
+        Predicate tooDeep = deep;
+        assertThatThrownBy(() -> predicateGuard.canonicalize(tooDeep))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("depth");
+    }
+
+    @Test
+    void rejectsTooManyParameters() {
+        List<String> usernames = LongStream.range(0, 200).mapToObj(i -> "guard" + i).collect(Collectors.toList());
+        assertThatThrownBy(() -> memberRepository.findAll(member.username.in(usernames)))
+                .isInstanceOf(InvalidDataAccessApiUsageException.class)
+                .hasCauseInstanceOf(IllegalArgumentException.class);
+
+        //or 로 길게 이어도 in 하나로 모은 뒤의 값 수로 센다.
+        List<Predicate> ors = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ors.add(member.username.eq("guard" + (i % 3 + 1)));
+        }
+        Predicate many = ExpressionUtils.anyOf(ors);
+        assertThat(memberRepository.findAll(many)).extracting("username").containsExactlyInAnyOrder("guard1", "guard2", "guard3");
+    }
+}
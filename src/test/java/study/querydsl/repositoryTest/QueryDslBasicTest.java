@@ -21,8 +21,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.dto.MemberDto;
+import study.querydsl.dto.MemberDtoProjection;
 import study.querydsl.dto.QMemberDto;
 import study.querydsl.dto.UserDto;
+import study.querydsl.dto.UserDtoProjection;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.QMember;
 import study.querydsl.entity.QTeam;
@@ -34,6 +36,7 @@ import javax.persistence.PersistenceContext;
 import javax.persistence.PersistenceUnit;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.*;
 import static study.querydsl.entity.QMember.*;
@@ -637,6 +640,49 @@ public class QueryDslBasicTest {
             System.out.println("memberDto = " + memberDto);
         }
     }
+
+    //projection-processor 가 만든 MemberDtoProjection. bean 처럼 이름으로 매핑하지만 row 마다 setter 를 바로 부른다.
+    @Test
+    void findDtoByGeneratedProjection() {
+        List<MemberDto> result = queryFactory
+                .select(MemberDtoProjection.of(member.username, member.age))
+                .from(member)
+                .orderBy(member.id.asc())
+                .fetch();
+
+        assertThat(result).extracting("username", "age")
+                .containsExactlyElementsOf(queryFactory.select(member.username, member.age).from(member).orderBy(member.id.asc()).fetch().stream()
+                        .map(tuple -> tuple(tuple.get(member.username), tuple.get(member.age)))
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    void findUserDtoByGeneratedProjection() {
+        QMember memberSub = new QMember("memberSub");
+
+        Expression<?>[] args = {
+                member.username.as("name"),
+                ExpressionUtils.as(
+                        JPAExpressions
+                                .select(memberSub.age.max())
+                                .from(memberSub), "age")};
+        List<UserDto> result = queryFactory
+                .select(UserDtoProjection.of(args))
+                .from(member)
+                .where(member.username.eq("member1"))
+                .fetch();
+
+        assertThat(result).containsExactlyElementsOf(queryFactory
+                .select(Projections.bean(UserDto.class, args))
+                .from(member)
+                .where(member.username.eq("member1"))
+                .fetch());
+        assertThat(result).isNotEmpty().extracting("name").containsOnly("member1");
+        //속성에 없는 이름은 쿼리 전에 막는다.
+        assertThatThrownBy(() -> UserDtoProjection.of(member.username))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
     //동적 쿼리 booleanBuilder
     @Test
     void dynamicQuery_BooleanBuilder() {
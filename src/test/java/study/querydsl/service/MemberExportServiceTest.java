@@ -0,0 +1,49 @@
+package study.querydsl.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class MemberExportServiceTest {
+
+    @Autowired
+    MemberExportService memberExportService;
+    @Autowired
+    EntityManager em;
+
+    @Test
+    void exportTest() throws Exception {
+        Team team = new Team("exportTeam");
+        em.persist(team);
+        em.persist(new Member("export1", 10, team));
+        em.persist(new Member("export2", 20, team));
+        em.persist(new Member("export3", 30, team));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("exportTeam");
+        condition.setAgeGoe(15);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long count = memberExportService.export(condition, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(count).isEqualTo(2);
+        assertThat(lines).hasSize(2);
+        //id 순서로 내보내지만 시퀀스를 다른 테스트와 같이 쓰므로 id 가 만든 순서대로라는 보장은 없다.
+        assertThat(lines).allSatisfy(line -> assertThat(line).contains("\"teamName\":\"exportTeam\""));
+        assertThat(lines).anySatisfy(line -> assertThat(line).contains("\"username\":\"export2\""));
+        assertThat(lines).anySatisfy(line -> assertThat(line).contains("\"username\":\"export3\""));
+    }
+}
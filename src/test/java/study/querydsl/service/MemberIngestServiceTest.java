@@ -0,0 +1,88 @@
+package study.querydsl.service;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.cache.TeamDictionary;
+import study.querydsl.dto.MemberIngestRow;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+//청크마다 커밋하므로 테스트 트랜잭션 없이 실행하고 직접 지운다.
+@SpringBootTest(properties = "member.ingest.chunk-size=500")
+class MemberIngestServiceTest {
+
+    @Autowired
+    MemberIngestService memberIngestService;
+    @Autowired
+    TeamDictionary teamDictionary;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    EntityManagerFactory emf;
+    @Autowired
+    TransactionTemplate tx;
+
+    Team existingTeam;
+
+    @BeforeEach
+    void before() {
+        existingTeam = tx.execute(status -> {
+            Team team = new Team("ingestA");
+            em.persist(team);
+            return team;
+        });
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            List<Long> teamIds = queryFactory.select(team.id).from(team).where(team.name.in("ingestA", "ingestB")).fetch();
+            queryFactory.delete(member).where(member.team.id.in(teamIds)).execute();
+            queryFactory.delete(team).where(team.id.in(teamIds)).execute();
+        });
+    }
+
+    @Test
+    void ingestTest() {
+        List<MemberIngestRow> rows = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            rows.add(new MemberIngestRow("ingest" + i, i % 100, i % 2 == 0 ? "ingestA" : "ingestB"));
+        }
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        long statements = statistics.getPrepareStatementCount();
+
+        long saved = memberIngestService.ingest(rows);
+
+        assertThat(saved).isEqualTo(1200);
+        //insert 는 배치로, id 는 블록 단위로 받으므로 row 수보다 훨씬 적은 statement 만 쓴다.
+        assertThat(statistics.getPrepareStatementCount() - statements).isLessThan(120);
+
+        //있던 팀은 재사용하고 없는 팀은 한 번만 만든다.
+        List<Team> teams = queryFactory.selectFrom(team).where(team.name.in("ingestA", "ingestB")).fetch();
+        assertThat(teams).extracting("name").containsExactlyInAnyOrder("ingestA", "ingestB");
+        assertThat(queryFactory.select(member.count()).from(member).where(member.team.id.eq(existingTeam.getId())).fetchOne())
+                .isEqualTo(600);
+        assertThat(queryFactory.select(member.id.countDistinct()).from(member).where(member.username.startsWith("ingest")).fetchOne())
+                .isEqualTo(1200);
+
+        //row 이벤트 대신 벌크 이벤트로 팀 사전이 갱신된다.
+        assertThat(teamDictionary.idsOf("ingestB")).hasSize(1);
+    }
+}
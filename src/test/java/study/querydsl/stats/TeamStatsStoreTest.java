@@ -0,0 +1,108 @@
+package study.querydsl.stats;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+//통계는 커밋된 변경만 반영하므로 테스트 트랜잭션 없이 직접 커밋한다.
+@SpringBootTest
+class TeamStatsStoreTest {
+
+    @Autowired
+    TeamStatsStore teamStatsStore;
+    @Autowired
+    JPAQueryFactory queryFactory;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate tx;
+
+    Team statsTeam;
+    Team otherTeam;
+
+    @BeforeEach
+    void before() {
+        tx.executeWithoutResult(status -> {
+            statsTeam = new Team("statsTeam");
+            otherTeam = new Team("statsOtherTeam");
+            em.persist(statsTeam);
+            em.persist(otherTeam);
+            em.persist(new Member("stats10", 10, statsTeam));
+            em.persist(new Member("stats20", 20, statsTeam));
+            em.persist(new Member("stats30", 30, statsTeam));
+        });
+    }
+
+    @AfterEach
+    void after() {
+        tx.executeWithoutResult(status -> {
+            queryFactory.delete(member).where(member.team.id.in(statsTeam.getId(), otherTeam.getId())).execute();
+            queryFactory.delete(team).where(team.id.in(statsTeam.getId(), otherTeam.getId())).execute();
+        });
+    }
+
+    @Test
+    void rowChangesAreAppliedIncrementally() {
+        assertThat(statsOf(statsTeam)).isEqualTo(new TeamStatsDto(statsTeam.getId(), "statsTeam", 3, 60, 10, 30));
+        assertThat(statsOf(statsTeam).getAvgAge()).isEqualTo(20.0);
+        assertThat(statsOf(otherTeam)).isEqualTo(new TeamStatsDto(otherTeam.getId(), "statsOtherTeam", 0, 0, null, null));
+
+        //최소값을 가진 회원이 빠지고, 최대값을 가진 회원은 다른 팀으로 옮긴다.
+        tx.executeWithoutResult(status -> {
+            em.remove(findMember("stats10"));
+            findMember("stats30").setTeam(em.find(Team.class, otherTeam.getId()));
+        });
+
+        assertThat(statsOf(statsTeam)).isEqualTo(new TeamStatsDto(statsTeam.getId(), "statsTeam", 1, 20, 20, 20));
+        assertThat(statsOf(otherTeam)).isEqualTo(new TeamStatsDto(otherTeam.getId(), "statsOtherTeam", 1, 30, 30, 30));
+
+        //롤백된 변경은 반영하지 않는다.
+        tx.executeWithoutResult(status -> {
+            findMember("stats20").setAge(99);
+            em.flush();
+            status.setRollbackOnly();
+        });
+        assertThat(statsOf(statsTeam).getMaxAge()).isEqualTo(20);
+    }
+
+    @Test
+    void bulkChangeTriggersReconcile() throws InterruptedException {
+        tx.executeWithoutResult(status -> queryFactory.update(member)
+                .set(member.age, member.age.add(1))
+                .where(member.team.id.eq(statsTeam.getId()))
+                .execute());
+
+        //재집계는 백그라운드에서 돈다.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (statsOf(statsTeam).getAgeSum() != 63 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(statsOf(statsTeam)).isEqualTo(new TeamStatsDto(statsTeam.getId(), "statsTeam", 3, 63, 11, 31));
+    }
+
+    private TeamStatsDto statsOf(Team team) {
+        return teamStatsStore.stats().stream()
+                .filter(stats -> stats.getTeamId().equals(team.getId()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private Member findMember(String username) {
+        return queryFactory.selectFrom(member)
+                .where(member.username.eq(username), member.team.id.in(statsTeam.getId(), otherTeam.getId()))
+                .fetchOne();
+    }
+}